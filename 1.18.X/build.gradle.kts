@@ -3,6 +3,9 @@ dependencies {
     mappings("net.fabricmc:yarn:1.18.2+build.4")
     modImplementation("net.fabricmc:fabric-loader:0.16.3")
     modImplementation("net.fabricmc.fabric-api:fabric-api:0.77.0+1.18.2")
+
+    implementation(project(":common"))
+    include(project(":common"))
 }
 
 tasks.withType<ProcessResources> {
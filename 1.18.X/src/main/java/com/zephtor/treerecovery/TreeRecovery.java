@@ -2,6 +2,7 @@ package com.zephtor.treerecovery;
 
 import com.google.gson.Gson;
 import com.mojang.brigadier.context.CommandContext;
+import com.zephtor.treerecovery.core.StateTransformTable;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.fabric.api.command.v1.CommandRegistrationCallback;
@@ -44,6 +45,7 @@ public class TreeRecovery implements DedicatedServerModInitializer {
     private final Set<Item> axes = new HashSet<>();
     private final Set<Block> strippedLogs = new HashSet<>();
     private final Set<Block> strippedWoods = new HashSet<>();
+    private volatile StateTransformTable restoreTable = StateTransformTable.builder(0).build();
 
     @Override
     public void onInitializeServer() {
@@ -93,6 +95,22 @@ public class TreeRecovery implements DedicatedServerModInitializer {
             LOGGER.warn("Config file not found, using defaults.");
             setDefaultConfig();
         }
+        compileRestoreTable();
+    }
+
+    /**
+     * Works out the restored state of every stripped block state up front, so the click handler does
+     * a single array read on the state's raw id.
+     */
+    private void compileRestoreTable() {
+        StateTransformTable.Builder builder = StateTransformTable.builder(Block.STATE_IDS.size());
+        for (BlockState blockState : Block.STATE_IDS) {
+            if (isStrippedLog(blockState) || isStrippedWood(blockState)) {
+                BlockState updatedBlockState = copyBlockStateProperties(blockState, getNormalType(blockState));
+                builder.put(Block.getRawIdFromState(blockState), Block.getRawIdFromState(updatedBlockState), 0);
+            }
+        }
+        restoreTable = builder.build();
     }
 
     private void setDefaultConfig() {
@@ -138,12 +156,11 @@ public class TreeRecovery implements DedicatedServerModInitializer {
             if (hand == Hand.MAIN_HAND && hitResult instanceof BlockHitResult) {
                 BlockPos blockPos = hitResult.getBlockPos();
                 BlockState blockState = world.getBlockState(blockPos);
-                if (isStrippedLog(blockState) || isStrippedWood(blockState)) {
+                int target = restoreTable.getTarget(Block.getRawIdFromState(blockState));
+                if (target != StateTransformTable.NONE) {
                     ItemStack itemStack = player.getStackInHand(hand);
                     if (isAxe(itemStack.getItem()) && isAllowedAxe(itemStack.getItem())) {
-                        BlockState newBlockState = getNormalType(blockState);
-                        BlockState updatedBlockState = copyBlockStateProperties(blockState, newBlockState);
-                        world.setBlockState(blockPos, updatedBlockState);
+                        world.setBlockState(blockPos, Block.getStateFromRawId(target));
                         damageItem(player, itemStack);
                         return ActionResult.SUCCESS;
                     }
@@ -3,6 +3,9 @@ dependencies {
     mappings("net.fabricmc:yarn:1.19.4+build.2")
     modImplementation("net.fabricmc:fabric-loader:0.16.3")
     modImplementation("net.fabricmc.fabric-api:fabric-api:0.87.2+1.19.4")
+
+    implementation(project(":common"))
+    include(project(":common"))
 }
 
 tasks.withType<ProcessResources> {
@@ -3,6 +3,9 @@ dependencies {
     mappings("net.fabricmc:yarn:1.20.4+build.3")
     modImplementation("net.fabricmc:fabric-loader:0.16.3")
     modImplementation("net.fabricmc.fabric-api:fabric-api:0.97.2+1.20.4")
+
+    implementation(project(":common"))
+    include(project(":common"))
 }
 
 tasks.withType<ProcessResources> {
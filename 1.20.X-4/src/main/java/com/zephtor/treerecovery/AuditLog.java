@@ -0,0 +1,279 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.AuditRingBuffer;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit log of restorations, queryable by position.
+ * <p>
+ * Records are published through an {@link AuditRingBuffer} and written by a background thread into
+ * one file per world and region. Every chunk is split into 16 cells of 4 by 4 block columns. The
+ * first 128 KiB of a region file hold the offset of the newest record of each cell, and every record
+ * points to the previous record of its cell. A lookup therefore only reads the records of the cells
+ * within its radius, and at most {@link #MAX_CHAIN_WALK} of them per cell, so its cost does not grow
+ * with the lifetime history of a busy chunk.
+ */
+class AuditLog implements BlockWriteBatch.Listener {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int CHUNKS_PER_REGION = 32 * 32;
+    private static final int CELLS_PER_CHUNK = 16;
+    private static final int CELLS_PER_REGION = CHUNKS_PER_REGION * CELLS_PER_CHUNK;
+    private static final int HEADER_SIZE = CELLS_PER_REGION * Long.BYTES;
+    private static final int MAX_CHAIN_WALK = 4096;
+    private static final int RECORD_SIZE = 48;
+    private static final int MAX_OPEN_REGIONS = 64;
+
+    private final Path directory;
+    private final AuditRingBuffer ring;
+    private final Map<Identifier, Integer> worldIndices = new ConcurrentHashMap<>();
+    private final List<Identifier> worlds = new CopyOnWriteArrayList<>();
+    private final Map<Path, RegionFile> openRegions = new LinkedHashMap<>(16, 0.75F, true);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    AuditLog(Path directory, int bufferSize) throws IOException {
+        this.directory = directory;
+        this.ring = new AuditRingBuffer(bufferSize);
+        Files.createDirectories(directory);
+        this.writer = new Thread(this::drain, "TreeRecovery Audit Log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Never waits for the writer; records that do not fit in the buffer are dropped and logged by it.
+     */
+    @Override
+    public void onWrite(ServerWorld world, long pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo) {
+        ring.publish(worldIndex(world.getRegistryKey().getValue()), pos,
+                Block.getRawIdFromState(oldState), Block.getRawIdFromState(newState),
+                actor == null ? 0L : actor.getMostSignificantBits(), actor == null ? 0L : actor.getLeastSignificantBits(),
+                System.currentTimeMillis());
+    }
+
+    void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int worldIndex(Identifier world) {
+        Integer index = worldIndices.get(world);
+        if (index != null) {
+            return index;
+        }
+        synchronized (worlds) {
+            return worldIndices.computeIfAbsent(world, key -> {
+                worlds.add(key);
+                return worlds.size() - 1;
+            });
+        }
+    }
+
+    private void drain() {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        while (true) {
+            int slot = ring.peek();
+            if (slot < 0) {
+                logDropped();
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                continue;
+            }
+            try {
+                append(slot, record);
+            } catch (IOException e) {
+                LOGGER.error("Failed to write audit log", e);
+            }
+            ring.release(slot);
+        }
+        for (RegionFile region : openRegions.values()) {
+            region.close();
+        }
+        openRegions.clear();
+    }
+
+    private void logDropped() {
+        long dropped = ring.takeDropped();
+        if (dropped > 0) {
+            LOGGER.warn("Audit log fell behind, dropped {} records", dropped);
+        }
+    }
+
+    private void append(int slot, ByteBuffer record) throws IOException {
+        long pos = ring.positions[slot];
+        int x = BlockPos.unpackLongX(pos);
+        int z = BlockPos.unpackLongZ(pos);
+        RegionFile region = region(worlds.get(ring.worlds[slot]), ChunkSectionPos.getSectionCoord(x) >> 5, ChunkSectionPos.getSectionCoord(z) >> 5);
+        int cellIndex = cellIndex(x, z);
+        long offset = region.end;
+        record.clear();
+        record.putLong(region.heads[cellIndex]);
+        record.putLong(pos);
+        record.putInt(ring.oldStates[slot]);
+        record.putInt(ring.newStates[slot]);
+        record.putLong(ring.actorMost[slot]);
+        record.putLong(ring.actorLeast[slot]);
+        record.putLong(ring.times[slot]);
+        record.flip();
+        region.channel.write(record, offset);
+        region.end += RECORD_SIZE;
+        region.heads[cellIndex] = offset;
+        record.clear();
+        record.putLong(offset).flip();
+        region.channel.write(record, (long) cellIndex * Long.BYTES);
+    }
+
+    private RegionFile region(Identifier world, int regionX, int regionZ) throws IOException {
+        Path path = regionPath(world, regionX, regionZ);
+        RegionFile region = openRegions.get(path);
+        if (region == null) {
+            region = new RegionFile(path);
+            openRegions.put(path, region);
+            if (openRegions.size() > MAX_OPEN_REGIONS) {
+                var eldest = openRegions.entrySet().iterator().next();
+                eldest.getValue().close();
+                openRegions.remove(eldest.getKey());
+            }
+        }
+        return region;
+    }
+
+    private Path regionPath(Identifier world, int regionX, int regionZ) {
+        return directory.resolve(world.getNamespace()).resolve(world.getPath()).resolve("r." + regionX + "." + regionZ + ".trc");
+    }
+
+    /**
+     * Index of the cell holding block column {@code x, z} within its region file.
+     */
+    private static int cellIndex(int x, int z) {
+        int chunkIndex = (ChunkSectionPos.getSectionCoord(x) & 31) + (ChunkSectionPos.getSectionCoord(z) & 31) * 32;
+        return chunkIndex * CELLS_PER_CHUNK + ((x & 15) >> 2) + ((z & 15) >> 2) * 4;
+    }
+
+    /**
+     * Returns the newest records within {@code radius} blocks of {@code center}, newest first.
+     * Safe to call from any thread; files are read with their own channels.
+     */
+    List<Entry> lookup(Identifier world, BlockPos center, int radius, int limit) throws IOException {
+        List<Entry> found = new ArrayList<>();
+        long radiusSquared = (long) radius * radius;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        ByteBuffer head = ByteBuffer.allocate(Long.BYTES);
+        int minChunkX = ChunkSectionPos.getSectionCoord(center.getX() - radius);
+        int maxChunkX = ChunkSectionPos.getSectionCoord(center.getX() + radius);
+        int minChunkZ = ChunkSectionPos.getSectionCoord(center.getZ() - radius);
+        int maxChunkZ = ChunkSectionPos.getSectionCoord(center.getZ() + radius);
+        for (int regionX = minChunkX >> 5; regionX <= maxChunkX >> 5; regionX++) {
+            for (int regionZ = minChunkZ >> 5; regionZ <= maxChunkZ >> 5; regionZ++) {
+                Path path = regionPath(world, regionX, regionZ);
+                if (!Files.exists(path)) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    int minX = Math.max(center.getX() - radius, regionX << 9);
+                    int maxX = Math.min(center.getX() + radius, (regionX << 9) + 511);
+                    int minZ = Math.max(center.getZ() - radius, regionZ << 9);
+                    int maxZ = Math.min(center.getZ() + radius, (regionZ << 9) + 511);
+                    for (int cellX = minX >> 2; cellX <= maxX >> 2; cellX++) {
+                        for (int cellZ = minZ >> 2; cellZ <= maxZ >> 2; cellZ++) {
+                            long dx = Math.max(0, Math.max((cellX << 2) - center.getX(), center.getX() - (cellX << 2) - 3));
+                            long dz = Math.max(0, Math.max((cellZ << 2) - center.getZ(), center.getZ() - (cellZ << 2) - 3));
+                            if (dx * dx + dz * dz > radiusSquared) {
+                                continue;
+                            }
+                            head.clear();
+                            channel.read(head, (long) cellIndex(cellX << 2, cellZ << 2) * Long.BYTES);
+                            long offset = head.flip().getLong();
+                            int taken = 0;
+                            int walked = 0;
+                            while (offset >= HEADER_SIZE && taken < limit && walked++ < MAX_CHAIN_WALK) {
+                                record.clear();
+                                channel.read(record, offset);
+                                record.flip();
+                                offset = record.getLong();
+                                long pos = record.getLong();
+                                if (center.getSquaredDistance(BlockPos.unpackLongX(pos), BlockPos.unpackLongY(pos), BlockPos.unpackLongZ(pos)) > radiusSquared) {
+                                    record.position(RECORD_SIZE);
+                                    continue;
+                                }
+                                int oldState = record.getInt();
+                                int newState = record.getInt();
+                                long most = record.getLong();
+                                long least = record.getLong();
+                                found.add(new Entry(BlockPos.fromLong(pos), oldState, newState,
+                                        most == 0L && least == 0L ? null : new UUID(most, least), record.getLong()));
+                                taken++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(Entry::time).reversed());
+        return found.size() > limit ? found.subList(0, limit) : found;
+    }
+
+    record Entry(BlockPos pos, int oldState, int newState, @Nullable UUID actor, long time) {
+    }
+
+    private static class RegionFile {
+        final FileChannel channel;
+        final long[] heads = new long[CELLS_PER_REGION];
+        long end;
+
+        RegionFile(Path path) throws IOException {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() >= HEADER_SIZE) {
+                channel.read(header, 0);
+                header.flip().asLongBuffer().get(heads);
+                end = HEADER_SIZE + (channel.size() - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            } else {
+                channel.write(header, 0);
+                end = HEADER_SIZE;
+            }
+        }
+
+        void close() {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to close audit region file", e);
+            }
+        }
+    }
+}
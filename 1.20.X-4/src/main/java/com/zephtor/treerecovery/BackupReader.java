@@ -0,0 +1,210 @@
+package com.zephtor.treerecovery;
+
+import com.mojang.serialization.Codec;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.PalettedContainer;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads chunks straight from the {@code .mca} region files of a backup copy of one dimension. Region
+ * files are memory-mapped once and only the chunks asked for are decompressed. Not thread safe; use
+ * one reader per task, off the server thread.
+ */
+class BackupReader implements AutoCloseable {
+
+    private static final int SECTOR_BYTES = 4096;
+    private static final int EXTERNAL_FLAG = 0x80;
+    static final Codec<PalettedContainer<BlockState>> BLOCK_STATES_CODEC = PalettedContainer.createPalettedContainerCodec(
+            Block.STATE_IDS, BlockState.CODEC, PalettedContainer.PaletteProvider.BLOCK_STATE, Blocks.AIR.getDefaultState());
+
+    private final Path directory;
+    private final Long2ObjectOpenHashMap<MappedByteBuffer> regions = new Long2ObjectOpenHashMap<>();
+
+    BackupReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Finds the blocks that are restorable in the live snapshots but were the natural block of the
+     * same species in the backup. The exact backup state is kept, so orientation and every other
+     * property come back as they were. Results are in chunk order.
+     */
+    Diff diff(BlockBox box, RecoveryTable table, RestorePlanner.Snapshots live) throws IOException {
+        LongArrayList positions = new LongArrayList();
+        IntArrayList expected = new IntArrayList();
+        IntArrayList targets = new IntArrayList();
+        int dataVersion = SharedConstants.getGameVersion().getSaveVersion().getId();
+        int missingChunks = 0;
+        int outdatedChunks = 0;
+        List<RestorePlanner.Snapshot> sections = live.sections();
+        for (int start = 0; start < sections.size(); ) {
+            RestorePlanner.Snapshot first = sections.get(start);
+            int end = start;
+            while (end < sections.size() && sections.get(end).chunkX() == first.chunkX() && sections.get(end).chunkZ() == first.chunkZ()) {
+                end++;
+            }
+            NbtCompound chunk = readChunk(first.chunkX(), first.chunkZ());
+            if (chunk == null) {
+                missingChunks++;
+            } else if (chunk.getInt("DataVersion") != dataVersion) {
+                // Upgrading old chunks needs the full chunk fixer chain; a backup from another version is skipped.
+                outdatedChunks++;
+            } else {
+                Int2ObjectOpenHashMap<PalettedContainer<BlockState>> backupSections = readSections(chunk);
+                for (int i = start; i < end; i++) {
+                    RestorePlanner.Snapshot section = sections.get(i);
+                    PalettedContainer<BlockState> backup = backupSections.get(section.sectionY());
+                    if (backup != null) {
+                        diffSection(box, table, section, backup, positions, expected, targets);
+                    }
+                }
+            }
+            start = end;
+        }
+        return new Diff(positions.toLongArray(), expected.toIntArray(), targets.toIntArray(), missingChunks, outdatedChunks);
+    }
+
+    private static void diffSection(BlockBox box, RecoveryTable table, RestorePlanner.Snapshot section, PalettedContainer<BlockState> backup,
+                                    LongArrayList positions, IntArrayList expected, IntArrayList targets) {
+        int baseX = ChunkSectionPos.getBlockCoord(section.chunkX());
+        int baseY = ChunkSectionPos.getBlockCoord(section.sectionY());
+        int baseZ = ChunkSectionPos.getBlockCoord(section.chunkZ());
+        for (int y = Math.max(baseY, box.getMinY()); y <= Math.min(baseY + 15, box.getMaxY()); y++) {
+            for (int z = Math.max(baseZ, box.getMinZ()); z <= Math.min(baseZ + 15, box.getMaxZ()); z++) {
+                for (int x = Math.max(baseX, box.getMinX()); x <= Math.min(baseX + 15, box.getMaxX()); x++) {
+                    BlockState liveState = section.states().get(x & 15, y & 15, z & 15);
+                    BlockState restoredState = table.getRestoredState(liveState);
+                    if (restoredState == null) {
+                        continue;
+                    }
+                    BlockState backupState = backup.get(x & 15, y & 15, z & 15);
+                    if (backupState.getBlock() == restoredState.getBlock()) {
+                        positions.add(BlockPos.asLong(x, y, z));
+                        expected.add(Block.getRawIdFromState(liveState));
+                        targets.add(Block.getRawIdFromState(backupState));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Int2ObjectOpenHashMap<PalettedContainer<BlockState>> readSections(NbtCompound chunk) {
+        Int2ObjectOpenHashMap<PalettedContainer<BlockState>> sections = new Int2ObjectOpenHashMap<>();
+        NbtList list = chunk.getList("sections", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < list.size(); i++) {
+            NbtCompound section = list.getCompound(i);
+            if (section.contains("block_states", NbtElement.COMPOUND_TYPE)) {
+                BLOCK_STATES_CODEC.parse(NbtOps.INSTANCE, section.getCompound("block_states")).result()
+                        .ifPresent(states -> sections.put(section.getByte("Y"), states));
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Returns the saved data of a chunk, or null if the backup does not contain it.
+     */
+    @Nullable
+    NbtCompound readChunk(int chunkX, int chunkZ) throws IOException {
+        MappedByteBuffer region = region(chunkX >> 5, chunkZ >> 5);
+        if (region == null) {
+            return null;
+        }
+        int header = region.getInt(((chunkX & 31) + (chunkZ & 31) * 32) * Integer.BYTES);
+        long offset = (long) (header >>> 8) * SECTOR_BYTES;
+        if (header == 0 || offset + 5 > region.limit()) {
+            return null;
+        }
+        int length = region.getInt((int) offset);
+        int type = region.get((int) offset + 4) & 0xFF;
+        InputStream raw;
+        if ((type & EXTERNAL_FLAG) != 0) {
+            Path external = directory.resolve("c." + chunkX + "." + chunkZ + ".mcc");
+            if (!Files.isRegularFile(external)) {
+                return null;
+            }
+            raw = Files.newInputStream(external);
+            type &= ~EXTERNAL_FLAG;
+        } else {
+            if (length <= 1 || offset + 4 + length > region.limit()) {
+                return null;
+            }
+            byte[] data = new byte[length - 1];
+            region.get((int) offset + 5, data);
+            raw = new ByteArrayInputStream(data);
+        }
+        InputStream in = switch (type) {
+            case 1 -> new GZIPInputStream(raw);
+            case 2 -> new InflaterInputStream(raw);
+            case 3 -> raw;
+            default -> null;
+        };
+        if (in == null) {
+            raw.close();
+            return null;
+        }
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            return NbtIo.readCompound(data);
+        }
+    }
+
+    @Nullable
+    private MappedByteBuffer region(int regionX, int regionZ) throws IOException {
+        long key = ChunkPos.toLong(regionX, regionZ);
+        if (regions.containsKey(key)) {
+            return regions.get(key);
+        }
+        MappedByteBuffer region = null;
+        Path file = directory.resolve("r." + regionX + "." + regionZ + ".mca");
+        if (Files.isRegularFile(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() >= SECTOR_BYTES * 2L) {
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+        }
+        regions.put(key, region);
+        return region;
+    }
+
+    @Override
+    public void close() {
+        regions.clear();
+    }
+
+    /**
+     * Blocks to rewrite: the live state each one must still have and the backup state it gets.
+     */
+    record Diff(long[] positions, int[] expectedStates, int[] targetStates, int missingChunks, int outdatedChunks) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Writes the states found by a {@link BackupReader.Diff} back in chunk order. A block is only
+ * rewritten while it still has the live state it had when the diff was taken.
+ */
+class BackupRestoreJob extends RestoreJob {
+
+    private final BackupReader.Diff diff;
+    private int cursor;
+
+    BackupRestoreJob(ServerWorld world, BackupReader.Diff diff, @Nullable UUID actor) {
+        super(world, actor);
+        this.diff = diff;
+    }
+
+    @Override
+    String describe() {
+        return "restore " + diff.positions().length + " blocks from backup";
+    }
+
+    @Override
+    int run(RecoveryTable table, BlockWriteBatch batch, int budget) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int spent = 0;
+        while (spent < budget && cursor < diff.positions().length) {
+            int index = cursor++;
+            pos.set(diff.positions()[index]);
+            spent++;
+            if (!world.isChunkLoaded(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()))) {
+                skipped++;
+                continue;
+            }
+            BlockState current = world.getBlockState(pos);
+            if (Block.getRawIdFromState(current) != diff.expectedStates()[index]) {
+                skipped++;
+                continue;
+            }
+            write(batch, pos, current, Block.getStateFromRawId(diff.targetStates()[index]));
+        }
+        return spent;
+    }
+
+    @Override
+    boolean isDone() {
+        return cursor >= diff.positions().length;
+    }
+}
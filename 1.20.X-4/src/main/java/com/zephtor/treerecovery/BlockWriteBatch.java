@@ -0,0 +1,216 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.particle.BlockStateParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.BlockSoundGroup;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.function.BooleanBiFunction;
+import net.minecraft.util.shape.VoxelShapes;
+import net.minecraft.world.EmptyBlockView;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Collects block writes for one world and applies them section by section.
+ * <p>
+ * All writes of a section happen in the same tick, so the chunk holder sends them as a single
+ * chunk delta update instead of one block update per block. When effects are enabled, one sound
+ * and one particle burst are played per section cluster rather than per block.
+ * <p>
+ * Swaps between states with identical shape and light properties (stripped and natural logs) are
+ * written without neighbor or shape updates. Blocks of the batch do not need to notify each other,
+ * so once the whole batch is written each touched section runs one deferred update pass that only
+ * notifies the blocks across the outer faces of the written cluster.
+ */
+class BlockWriteBatch {
+
+    private static final int MAX_PARTICLES = 64;
+    private static final int SILENT_FLAGS = Block.NOTIFY_LISTENERS | Block.FORCE_STATE;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final ServerWorld world;
+    private final Listener listener;
+    private final Long2ObjectLinkedOpenHashMap<Section> sections = new Long2ObjectLinkedOpenHashMap<>();
+    private int size;
+
+    BlockWriteBatch(ServerWorld world, Listener listener) {
+        this.world = world;
+        this.listener = listener;
+    }
+
+    void add(BlockPos pos, BlockState oldState, BlockState newState, @Nullable UUID actor) {
+        add(pos, oldState, newState, actor, false);
+    }
+
+    void add(BlockPos pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo) {
+        add(pos, oldState, newState, actor, undo, null);
+    }
+
+    /**
+     * Adds a write; {@code undo} marks writes that revert earlier restorations. {@code owner} is told
+     * about the write too, once it has actually been applied.
+     */
+    void add(BlockPos pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo, @Nullable Listener owner) {
+        long key = ChunkSectionPos.fromBlockPos(pos.asLong());
+        Section section = sections.get(key);
+        if (section == null) {
+            section = new Section();
+            sections.put(key, section);
+        }
+        section.positions.add(pos.asLong());
+        section.oldStates.add(oldState);
+        section.newStates.add(newState);
+        section.actors.add(actor);
+        section.undos.add(undo);
+        section.owners.add(owner);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Applies every collected write whose block still holds the state it was added with; the others
+     * are dropped without a listener call. {@code effects} plays the merged cluster effect of each section.
+     */
+    int flush(boolean effects) {
+        int written = 0;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        BlockPos.Mutable neighborPos = new BlockPos.Mutable();
+        LongOpenHashSet silentWrites = new LongOpenHashSet();
+        for (Section section : sections.values()) {
+            int count = 0;
+            double sumX = 0, sumY = 0, sumZ = 0;
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            BlockState effectState = null;
+            for (int i = 0; i < section.positions.size(); i++) {
+                pos.set(section.positions.getLong(i));
+                BlockState oldState = section.oldStates.get(i);
+                BlockState newState = section.newStates.get(i);
+                // Block events, pistons and entities run between add and flush; never write over what replaced the block.
+                if (world.getBlockState(pos) != oldState) {
+                    continue;
+                }
+                boolean silent = isEquivalent(oldState, newState);
+                if (!world.setBlockState(pos, newState, silent ? SILENT_FLAGS : Block.NOTIFY_ALL)) {
+                    continue;
+                }
+                if (silent) {
+                    silentWrites.add(section.positions.getLong(i));
+                }
+                listener.onWrite(world, section.positions.getLong(i), oldState, newState, section.actors.get(i), section.undos.getBoolean(i));
+                Listener owner = section.owners.get(i);
+                if (owner != null) {
+                    owner.onWrite(world, section.positions.getLong(i), oldState, newState, section.actors.get(i), section.undos.getBoolean(i));
+                }
+                if (effectState == null) {
+                    effectState = newState;
+                }
+                count++;
+                sumX += pos.getX();
+                sumY += pos.getY();
+                sumZ += pos.getZ();
+                minX = Math.min(minX, pos.getX());
+                minY = Math.min(minY, pos.getY());
+                minZ = Math.min(minZ, pos.getZ());
+                maxX = Math.max(maxX, pos.getX());
+                maxY = Math.max(maxY, pos.getY());
+                maxZ = Math.max(maxZ, pos.getZ());
+            }
+            if (count > 0 && effects) {
+                playClusterEffects(effectState, count, sumX / count + 0.5, sumY / count + 0.5, sumZ / count + 0.5,
+                        (maxX - minX + 1) / 2.0, (maxY - minY + 1) / 2.0, (maxZ - minZ + 1) / 2.0);
+            }
+            written += count;
+        }
+        if (!silentWrites.isEmpty()) {
+            // Deferred until every section is written, so faces between sections are not boundaries.
+            for (Section section : sections.values()) {
+                updateClusterBoundary(section, silentWrites, pos, neighborPos);
+            }
+        }
+        sections.clear();
+        size = 0;
+        return written;
+    }
+
+    /**
+     * Runs the deferred update pass of one section: every face of a silent write that touches a block
+     * outside this flush's silent writes gets one shape update and one neighbor update.
+     */
+    private void updateClusterBoundary(Section section, LongOpenHashSet silentWrites, BlockPos.Mutable pos, BlockPos.Mutable neighborPos) {
+        for (int i = 0; i < section.positions.size(); i++) {
+            long packed = section.positions.getLong(i);
+            if (!silentWrites.contains(packed)) {
+                continue;
+            }
+            pos.set(packed);
+            BlockState newState = section.newStates.get(i);
+            for (Direction direction : DIRECTIONS) {
+                neighborPos.set(pos, direction);
+                if (!silentWrites.contains(neighborPos.asLong())) {
+                    world.replaceWithStateForNeighborUpdate(direction.getOpposite(), newState, neighborPos, pos, Block.NOTIFY_LISTENERS, 512);
+                    world.updateNeighbor(neighborPos, newState.getBlock(), pos);
+                }
+            }
+        }
+    }
+
+    static boolean isEquivalent(BlockState oldState, BlockState newState) {
+        return oldState.getLuminance() == newState.getLuminance()
+                && oldState.getOpacity(EmptyBlockView.INSTANCE, BlockPos.ORIGIN) == newState.getOpacity(EmptyBlockView.INSTANCE, BlockPos.ORIGIN)
+                && oldState.hasSidedTransparency() == newState.hasSidedTransparency()
+                && oldState.emitsRedstonePower() == newState.emitsRedstonePower()
+                && !VoxelShapes.matchesAnywhere(
+                        oldState.getCollisionShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN),
+                        newState.getCollisionShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN),
+                        BooleanBiFunction.NOT_SAME);
+    }
+
+    private void playClusterEffects(BlockState state, int count, double x, double y, double z,
+                                    double spreadX, double spreadY, double spreadZ) {
+        BlockSoundGroup soundGroup = state.getSoundGroup();
+        float volume = Math.min(1.0F + count / 16.0F, 2.0F) * soundGroup.getVolume();
+        world.playSound(null, x, y, z, soundGroup.getPlaceSound(), SoundCategory.BLOCKS, volume, soundGroup.getPitch() * 0.8F);
+        world.spawnParticles(new BlockStateParticleEffect(ParticleTypes.BLOCK, state), x, y, z,
+                Math.min(count * 4, MAX_PARTICLES), spreadX / 2.0, spreadY / 2.0, spreadZ / 2.0, 0.0);
+    }
+
+    private static class Section {
+        final LongArrayList positions = new LongArrayList();
+        final List<BlockState> oldStates = new ArrayList<>();
+        final List<BlockState> newStates = new ArrayList<>();
+        final List<UUID> actors = new ArrayList<>();
+        final BooleanArrayList undos = new BooleanArrayList();
+        final List<Listener> owners = new ArrayList<>();
+    }
+
+    interface Listener {
+        Listener NONE = (world, pos, oldState, newState, actor, undo) -> {
+        };
+
+        /**
+         * Called for every applied write. {@code undo} is set for writes that revert earlier restorations.
+         */
+        void onWrite(ServerWorld world, long pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo);
+    }
+}
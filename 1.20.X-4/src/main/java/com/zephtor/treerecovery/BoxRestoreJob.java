@@ -0,0 +1,165 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Restores every restorable block inside a box, walking it chunk by chunk and section by section.
+ * Only the positions set in each section's {@link StrippedIndex} are visited, so clean sections
+ * cost a single check.
+ * <p>
+ * Chunks that are not loaded go through the {@link OfflineChunkEditor} when the job has one. Their
+ * edits are committed in chunk order as they become ready, and positions of chunks that were loaded
+ * meanwhile are restored through the live world afterwards.
+ */
+class BoxRestoreJob extends RestoreJob {
+
+    private static final int SCAN_COST_DIVISOR = 16;
+
+    private final BlockBox box;
+    private final int minChunkX, maxChunkX, minChunkZ, maxChunkZ, minSectionY, maxSectionY;
+    private int chunkX, chunkZ, sectionY;
+    private int localIndex;
+    private int scanned;
+    private boolean done;
+    private final Long2ObjectLinkedOpenHashMap<CompletableFuture<OfflineChunkEditor.Edit>> offlineEdits = new Long2ObjectLinkedOpenHashMap<>();
+    private final LongArrayFIFOQueue handedBack = new LongArrayFIFOQueue();
+
+    BoxRestoreJob(ServerWorld world, BlockBox box) {
+        super(world, null);
+        this.box = box;
+        this.minChunkX = ChunkSectionPos.getSectionCoord(box.getMinX());
+        this.maxChunkX = ChunkSectionPos.getSectionCoord(box.getMaxX());
+        this.minChunkZ = ChunkSectionPos.getSectionCoord(box.getMinZ());
+        this.maxChunkZ = ChunkSectionPos.getSectionCoord(box.getMaxZ());
+        this.minSectionY = ChunkSectionPos.getSectionCoord(Math.max(box.getMinY(), world.getBottomY()));
+        this.maxSectionY = ChunkSectionPos.getSectionCoord(Math.min(box.getMaxY(), world.getTopY() - 1));
+        this.chunkX = minChunkX;
+        this.chunkZ = minChunkZ;
+        this.sectionY = minSectionY;
+        this.done = minSectionY > maxSectionY;
+    }
+
+    @Override
+    String describe() {
+        return "restore " + box.getMinX() + " " + box.getMinY() + " " + box.getMinZ() + " to "
+                + box.getMaxX() + " " + box.getMaxY() + " " + box.getMaxZ();
+    }
+
+    @Override
+    int run(RecoveryTable table, BlockWriteBatch batch, int budget) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int spent = commitOfflineEdits(budget);
+        while (spent < budget && !handedBack.isEmpty()) {
+            pos.set(handedBack.dequeueLong());
+            spent++;
+            if (!world.isChunkLoaded(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()))) {
+                skipped++;
+                continue;
+            }
+            restore(table, batch, pos, world.getBlockState(pos));
+        }
+        while (!done && spent < budget) {
+            WorldChunk chunk = world.getChunkManager().getWorldChunk(chunkX, chunkZ);
+            if (chunk == null) {
+                if (offline != null && offline.isIdle(chunkX, chunkZ)) {
+                    if (!offline.hasCapacity()) {
+                        break;
+                    }
+                    offlineEdits.put(ChunkPos.toLong(chunkX, chunkZ), offline.edit(chunkX, chunkZ, box, table));
+                } else {
+                    skipped++;
+                }
+                nextChunk();
+                spent++;
+                continue;
+            }
+            ChunkSection section = chunk.getSection(world.sectionCoordToIndex(sectionY));
+            long[] bits = StrippedIndex.bits(section, table);
+            if (bits == null) {
+                nextSection();
+                spent++;
+                continue;
+            }
+            int baseX = ChunkSectionPos.getBlockCoord(chunkX);
+            int baseY = ChunkSectionPos.getBlockCoord(sectionY);
+            int baseZ = ChunkSectionPos.getBlockCoord(chunkZ);
+            while (spent < budget && (localIndex = StrippedIndex.next(bits, localIndex)) >= 0) {
+                pos.set(baseX + (localIndex & 15), baseY + (localIndex >> 8), baseZ + (localIndex >> 4 & 15));
+                localIndex++;
+                if (!box.contains(pos)) {
+                    if (++scanned % SCAN_COST_DIVISOR == 0) {
+                        spent++;
+                    }
+                    continue;
+                }
+                if (restore(table, batch, pos, section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15))) {
+                    spent++;
+                } else if (++scanned % SCAN_COST_DIVISOR == 0) {
+                    spent++;
+                }
+            }
+            if (localIndex < 0) {
+                nextSection();
+            }
+        }
+        return spent;
+    }
+
+    private int commitOfflineEdits(int budget) {
+        int spent = 0;
+        Iterator<CompletableFuture<OfflineChunkEditor.Edit>> iterator = offlineEdits.values().iterator();
+        while (spent < budget && iterator.hasNext()) {
+            CompletableFuture<OfflineChunkEditor.Edit> edit = iterator.next();
+            if (!edit.isDone()) {
+                break;
+            }
+            iterator.remove();
+            spent += offline.commit(edit.join(), this, handedBack::enqueue);
+        }
+        return spent;
+    }
+
+    @Override
+    boolean isDone() {
+        return done && offlineEdits.isEmpty() && handedBack.isEmpty();
+    }
+
+    @Override
+    void release() {
+        if (offline != null) {
+            for (long key : offlineEdits.keySet()) {
+                offline.release(new ChunkPos(key));
+            }
+        }
+        offlineEdits.clear();
+    }
+
+    private void nextSection() {
+        localIndex = 0;
+        if (++sectionY > maxSectionY) {
+            nextChunk();
+        }
+    }
+
+    private void nextChunk() {
+        localIndex = 0;
+        sectionY = minSectionY;
+        if (++chunkX > maxChunkX) {
+            chunkX = minChunkX;
+            if (++chunkZ > maxChunkZ) {
+                done = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.zephtor.treerecovery;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shape of {@code TreeRecovery/config.yml}. Fields left out of the file keep the defaults below;
+ * the {@code config.yml} generated on first start lists every option with its default.
+ */
+class Config {
+    /**
+     * {@code event} handles every right-click through the block use event. {@code axe} handles axes
+     * inside vanilla's axe use instead, leaving the event to the other configured tools.
+     */
+    String integration = "event";
+    List<String> axes;
+    List<String> strippedLogs;
+    List<String> strippedWoods;
+    int blocksPerTick = 256;
+    double targetTickMillis = 45.0;
+    int maxQueuedJobs = 256;
+    boolean journal = true;
+    int journalSegmentBytes = 4 * 1024 * 1024;
+    boolean auditLog = true;
+    int auditBufferSize = 65536;
+    boolean playerStrippedOnly = false;
+    int regrowthDelayTicks = 0;
+    Map<String, Float> randomRegrowthChances;
+    int protectionCacheTicks = 100;
+    /**
+     * Lets dispensers holding a restoring tool restore the block in front of them. Opt-in, dispensers
+     * behave like vanilla otherwise.
+     */
+    boolean dispensers = false;
+    int dispenserBlocksPerChunkTick = 4;
+    int dispenserQueueSize = 1024;
+    int toggleThreshold = 8;
+    int toggleWindowTicks = 1200;
+    /**
+     * Lets box restores rewrite the saved data of unloaded chunks instead of skipping them. Opt-in.
+     */
+    boolean offlineEdits = false;
+    /**
+     * Plays one place sound and a burst of particles per restored cluster. Off by default, restores
+     * are silent like they always were.
+     */
+    boolean restoreEffects = false;
+    /**
+     * Transforms besides the axe lists, for example a shovel turning {@code minecraft:dirt_path} back
+     * into {@code minecraft:dirt}. Opt-in: none are active unless listed.
+     */
+    List<TransformEntry> transforms = List.of();
+    List<ToolRule> rules;
+    boolean allowByDefault = true;
+    List<RegionRule> regions;
+
+    /**
+     * One entry of {@code transforms}. {@code tool} is {@code axe} for the {@code axes} list, one of
+     * {@code shovel}, {@code hoe}, {@code pickaxe}, {@code sword} and {@code shears}, an item tag as
+     * {@code #namespace:path}, or a single item id.
+     */
+    static class TransformEntry {
+        String tool;
+        String from;
+        String to;
+        int durability = 1;
+    }
+
+    /**
+     * One entry of {@code rules}. Leaving out tools or blocks, or listing {@code "*"}, matches all of
+     * them. {@code allow} and {@code durability} change only the matched cells when present.
+     */
+    static class ToolRule {
+        List<String> tools;
+        List<String> blocks;
+        Boolean allow;
+        Integer durability;
+    }
+
+    /**
+     * One entry of {@code regions}. Any of dimension, biome and the {@code from}/{@code to} corners
+     * may be left out to match everything.
+     */
+    static class RegionRule {
+        String dimension;
+        String biome;
+        int[] from;
+        int[] to;
+        boolean allow = true;
+    }
+}
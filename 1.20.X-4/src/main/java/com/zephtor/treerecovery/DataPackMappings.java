@@ -0,0 +1,133 @@
+package com.zephtor.treerecovery;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.fabricmc.fabric.api.resource.SimpleResourceReloadListener;
+import net.minecraft.resource.Resource;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
+import net.minecraft.util.profiler.Profiler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads mapping files shipped in data packs under {@code data/<namespace>/treerecovery/mappings/}.
+ * Files are parsed on the reload worker threads; the result only replaces the previous one once the
+ * whole reload has been read. Entries with a malformed id are logged and skipped, the rest of the
+ * file still loads.
+ */
+class DataPackMappings implements SimpleResourceReloadListener<DataPackMappings.Mappings> {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Identifier ID = new Identifier("treerecovery", "mappings");
+    private static final String DIRECTORY = "treerecovery/mappings";
+
+    private volatile Mappings current = Mappings.EMPTY;
+
+    Mappings get() {
+        return current;
+    }
+
+    @Override
+    public Identifier getFabricId() {
+        return ID;
+    }
+
+    @Override
+    public CompletableFuture<Mappings> load(ResourceManager manager, Profiler profiler, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> read(manager), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> apply(Mappings data, ResourceManager manager, Profiler profiler, Executor executor) {
+        current = data;
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static Mappings read(ResourceManager manager) {
+        Gson gson = new Gson();
+        List<String> axes = new ArrayList<>();
+        Map<String, String> stripped = new LinkedHashMap<>();
+        List<Config.TransformEntry> transforms = new ArrayList<>();
+        Map<Identifier, Resource> files = manager.findResources(DIRECTORY, id -> id.getPath().endsWith(".json"));
+        for (Map.Entry<Identifier, Resource> file : files.entrySet()) {
+            try (Reader reader = file.getValue().getReader()) {
+                MappingFile mappings = gson.fromJson(reader, MappingFile.class);
+                if (mappings == null) {
+                    continue;
+                }
+                if (mappings.axes != null) {
+                    for (String axe : mappings.axes) {
+                        if (isValid(file.getKey(), axe)) {
+                            axes.add(axe);
+                        }
+                    }
+                }
+                if (mappings.stripped != null) {
+                    for (Map.Entry<String, String> pair : mappings.stripped.entrySet()) {
+                        if (isValid(file.getKey(), pair.getKey()) && isValid(file.getKey(), pair.getValue())) {
+                            stripped.put(pair.getKey(), pair.getValue());
+                        }
+                    }
+                }
+                if (mappings.transforms != null) {
+                    for (Config.TransformEntry transform : mappings.transforms) {
+                        if (transform == null) {
+                            continue;
+                        }
+                        // Tools may name an item tag as "#namespace:path".
+                        String tool = transform.tool != null && transform.tool.startsWith("#") ? transform.tool.substring(1) : transform.tool;
+                        if ((tool == null || isValid(file.getKey(), tool))
+                                && (transform.from == null || isValid(file.getKey(), transform.from))
+                                && (transform.to == null || isValid(file.getKey(), transform.to))) {
+                            transforms.add(transform);
+                        }
+                    }
+                }
+            } catch (IOException | JsonParseException e) {
+                LOGGER.error("Failed to read TreeRecovery mappings {}", file.getKey(), e);
+            }
+        }
+        if (!files.isEmpty()) {
+            LOGGER.info("Loaded {} TreeRecovery mapping files from data packs", files.size());
+        }
+        return new Mappings(List.copyOf(axes), Map.copyOf(stripped), List.copyOf(transforms));
+    }
+
+    private static boolean isValid(Identifier file, String id) {
+        if (id == null) {
+            LOGGER.warn("Skipping missing id in TreeRecovery mappings {}", file);
+            return false;
+        }
+        try {
+            new Identifier(id);
+            return true;
+        } catch (InvalidIdentifierException e) {
+            LOGGER.warn("Skipping invalid id '{}' in TreeRecovery mappings {}", id, file);
+            return false;
+        }
+    }
+
+    /**
+     * Shape of one mapping file. {@code stripped} maps stripped block ids to the block they grow back into.
+     */
+    private static class MappingFile {
+        List<String> axes;
+        Map<String, String> stripped;
+        List<Config.TransformEntry> transforms;
+    }
+
+    record Mappings(List<String> axes, Map<String, String> stripped, List<Config.TransformEntry> transforms) {
+        static final Mappings EMPTY = new Mappings(List.of(), Map.of(), List.of());
+    }
+}
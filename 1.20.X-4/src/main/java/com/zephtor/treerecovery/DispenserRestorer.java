@@ -0,0 +1,94 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+/**
+ * Restorations requested by dispensers in one world. Each chunk may restore a limited number of
+ * blocks per tick; requests beyond that wait in a bounded queue that drains in later ticks, so a
+ * redstone clock cannot turn into an unbounded stream of block updates. Accepted restorations are
+ * written with the rest of the world's batch at the end of the tick.
+ */
+class DispenserRestorer {
+
+    private final ServerWorld world;
+    private final Long2IntOpenHashMap spent = new Long2IntOpenHashMap();
+    private final LongArrayFIFOQueue overflow = new LongArrayFIFOQueue();
+    private final LongOpenHashSet queued = new LongOpenHashSet();
+    private final LongOpenHashSet pending = new LongOpenHashSet();
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+    private int chunkBudget = Integer.MAX_VALUE;
+
+    DispenserRestorer(ServerWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Restores {@code blockState} at {@code blockPos} now if its chunk has budget left this tick,
+     * queues it otherwise.
+     */
+    Result offer(RecoveryTable table, BlockWriteBatch batch, BlockPos blockPos, BlockState blockState) {
+        long packed = blockPos.asLong();
+        if (queued.contains(packed) || pending.contains(packed)) {
+            return Result.DUPLICATE;
+        }
+        long chunk = ChunkPos.toLong(ChunkSectionPos.getSectionCoord(blockPos.getX()), ChunkSectionPos.getSectionCoord(blockPos.getZ()));
+        if (spent.get(chunk) < Math.min(chunkBudget, table.getDispenserBlocksPerChunkTick())) {
+            spent.addTo(chunk, 1);
+            pending.add(packed);
+            batch.add(blockPos, blockState, table.getTransformedState(blockState), null);
+            return Result.RESTORED;
+        }
+        if (overflow.size() >= table.getDispenserQueueSize()) {
+            return Result.FULL;
+        }
+        overflow.enqueue(packed);
+        queued.add(packed);
+        return Result.QUEUED;
+    }
+
+    /**
+     * Starts a new tick with {@code budget} restorations per chunk and spends it on queued requests
+     * first. Requests whose chunk has unloaded are dropped; the block is checked again since it may
+     * have changed while queued.
+     */
+    void tick(RecoveryTable table, BlockWriteBatch batch, int budget) {
+        spent.clear();
+        pending.clear();
+        chunkBudget = budget;
+        for (int i = overflow.size(); i > 0; i--) {
+            long packed = overflow.dequeueLong();
+            pos.set(packed);
+            int chunkX = ChunkSectionPos.getSectionCoord(pos.getX());
+            int chunkZ = ChunkSectionPos.getSectionCoord(pos.getZ());
+            long chunk = ChunkPos.toLong(chunkX, chunkZ);
+            if (world.isChunkLoaded(chunkX, chunkZ) && spent.get(chunk) >= budget) {
+                overflow.enqueue(packed);
+                continue;
+            }
+            queued.remove(packed);
+            if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                continue;
+            }
+            spent.addTo(chunk, 1);
+            BlockState blockState = world.getBlockState(pos);
+            BlockState newState = table.getTransformedState(blockState);
+            if (newState != null) {
+                batch.add(pos, blockState, newState, null);
+            }
+        }
+    }
+
+    enum Result {
+        RESTORED,
+        QUEUED,
+        DUPLICATE,
+        FULL
+    }
+}
@@ -0,0 +1,92 @@
+package com.zephtor.treerecovery;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of every restore job across all worlds and the one per-tick budget they share. At the
+ * start of each server tick the budget is split between the jobs that are neither paused nor idle,
+ * in proportion to their priority, so an idle regrowth queue takes nothing from a running restore.
+ * Shares are kept as deficit counters, so shares smaller than one block still add up over several
+ * ticks. A job can never take more than what is left of the tick's budget, so all jobs in all
+ * worlds together stay within it.
+ */
+class JobManager {
+
+    static final int MIN_PRIORITY = 1;
+    static final int MAX_PRIORITY = 10;
+
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Map<Integer, RestoreJob> jobs = new ConcurrentSkipListMap<>();
+    private int remaining;
+
+    void register(RestoreJob job) {
+        job.id = nextId.getAndIncrement();
+        jobs.put(job.id, job);
+        job.future.whenComplete((result, error) -> jobs.remove(job.id));
+    }
+
+    Collection<RestoreJob> list() {
+        return jobs.values();
+    }
+
+    @Nullable
+    RestoreJob get(int id) {
+        return jobs.get(id);
+    }
+
+    synchronized void startTick(int budget) {
+        remaining = budget;
+        int totalWeight = 0;
+        for (RestoreJob job : jobs.values()) {
+            if (isRunnable(job)) {
+                totalWeight += job.priority;
+            }
+        }
+        if (totalWeight == 0) {
+            return;
+        }
+        for (RestoreJob job : jobs.values()) {
+            if (isRunnable(job)) {
+                job.credit = Math.min(budget, job.credit + (double) budget * job.priority / totalWeight);
+            }
+        }
+    }
+
+    /**
+     * Fraction of the tick's budget a new job with {@code priority} would get next to the running ones.
+     */
+    double share(int priority) {
+        int totalWeight = priority;
+        for (RestoreJob job : jobs.values()) {
+            if (isRunnable(job)) {
+                totalWeight += job.priority;
+            }
+        }
+        return (double) priority / totalWeight;
+    }
+
+    private static boolean isRunnable(RestoreJob job) {
+        return !job.paused && job.hasWork();
+    }
+
+    /**
+     * Takes the part of the tick's budget {@code job} may spend now. Whatever it does not spend has to
+     * be handed back through {@link #settle}.
+     */
+    synchronized int reserve(RestoreJob job) {
+        int reserved = Math.max(0, Math.min((int) job.credit, remaining));
+        remaining -= reserved;
+        return reserved;
+    }
+
+    synchronized void settle(RestoreJob job, int reserved, int spent) {
+        spent = Math.min(spent, reserved);
+        remaining += reserved - spent;
+        job.credit -= spent;
+    }
+}
@@ -0,0 +1,256 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.SectionBits;
+import com.zephtor.treerecovery.mixin.ThreadedAnvilChunkStorageAccessor;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.PalettedContainer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
+
+/**
+ * Restores blocks of chunks that are not loaded by rewriting their saved data, so box restores do
+ * not have to load chunks with their entities, block entities and ticking. Only used when the
+ * {@code offlineEdits} config option is on; every other job skips unloaded chunks.
+ * <p>
+ * The chunk is read through the server's chunk storage, its section palettes are rewritten on the
+ * world's executor, and the result is handed back to the storage on the thread ticking the world.
+ * The storage orders reads after earlier writes, so a chunk loaded after that sees the edit. A chunk
+ * that started loading, was deserialized or is still being saved while its edit was prepared is not
+ * written; its positions are handed back to the job to go through the live world instead.
+ * <p>
+ * Only swaps that {@link BlockWriteBatch#isEquivalent} allows and that involve no block entity are
+ * made, so light, heightmaps and block entities stored with the chunk stay valid.
+ */
+class OfflineChunkEditor {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    static final int MAX_IN_FLIGHT = 8;
+    private static final int COMMIT_COST_DIVISOR = 16;
+
+    private final ServerWorld world;
+    private final BlockWriteBatch.Listener listener;
+    private final Executor executor;
+    private final Set<Long> editing = ConcurrentHashMap.newKeySet();
+    private final Set<Long> disturbed = ConcurrentHashMap.newKeySet();
+
+    OfflineChunkEditor(ServerWorld world, BlockWriteBatch.Listener listener, Executor executor) {
+        this.world = world;
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    /**
+     * Whether the chunk is neither loaded, loading, waiting to be saved nor already being edited.
+     */
+    boolean isIdle(int chunkX, int chunkZ) {
+        long key = ChunkPos.toLong(chunkX, chunkZ);
+        return !editing.contains(key) && isUnloaded(key);
+    }
+
+    boolean hasCapacity() {
+        return editing.size() < MAX_IN_FLIGHT;
+    }
+
+    /**
+     * Reads the chunk and prepares the restoration of the restorable blocks inside {@code box}. The
+     * returned edit must be passed to {@link #commit} or {@link #release} on the world thread.
+     */
+    CompletableFuture<Edit> edit(int chunkX, int chunkZ, BlockBox box, RecoveryTable table) {
+        ChunkPos chunkPos = new ChunkPos(chunkX, chunkZ);
+        editing.add(chunkPos.toLong());
+        return world.getChunkManager().threadedAnvilChunkStorage.getNbt(chunkPos)
+                .thenApplyAsync(nbt -> nbt.map(saved -> prepare(chunkPos, saved.copy(), box, table)).orElse(null), executor)
+                .handle((edit, error) -> {
+                    if (error != null) {
+                        LOGGER.error("Failed to prepare TreeRecovery edit of chunk {}", chunkPos, error);
+                    }
+                    return edit != null ? edit : new Edit(chunkPos, null);
+                });
+    }
+
+    /**
+     * Writes a prepared edit back and reports its writes, or hands its positions to {@code handBack}
+     * if the chunk was touched meanwhile. Returns the budget the commit costs.
+     */
+    int commit(Edit edit, RestoreJob job, LongConsumer handBack) {
+        long key = edit.chunkPos.toLong();
+        boolean touched = disturbed.remove(key);
+        touched |= !isUnloaded(key);
+        editing.remove(key);
+        if (edit.nbt == null || edit.positions.isEmpty()) {
+            job.skipped += edit.skipped;
+            return 1;
+        }
+        if (touched) {
+            for (int i = 0; i < edit.positions.size(); i++) {
+                handBack.accept(edit.positions.getLong(i));
+            }
+            return 1;
+        }
+        world.getChunkManager().threadedAnvilChunkStorage.setNbt(edit.chunkPos, edit.nbt);
+        job.skipped += edit.skipped;
+        for (int i = 0; i < edit.positions.size(); i++) {
+            BlockState newState = edit.newStates.get(i);
+            listener.onWrite(world, edit.positions.getLong(i), edit.oldStates.get(i), newState, job.actor, false);
+            job.count(newState);
+        }
+        return 1 + edit.positions.size() / COMMIT_COST_DIVISOR;
+    }
+
+    /**
+     * Drops an edit that will not be committed.
+     */
+    void release(ChunkPos chunkPos) {
+        editing.remove(chunkPos.toLong());
+        disturbed.remove(chunkPos.toLong());
+    }
+
+    /**
+     * Called from the chunk serializer, on any thread, whenever saved chunk data is turned into a chunk.
+     */
+    void onChunkDeserialized(ChunkPos chunkPos) {
+        if (editing.contains(chunkPos.toLong())) {
+            disturbed.add(chunkPos.toLong());
+        }
+    }
+
+    private boolean isUnloaded(long key) {
+        ThreadedAnvilChunkStorageAccessor storage = (ThreadedAnvilChunkStorageAccessor) world.getChunkManager().threadedAnvilChunkStorage;
+        return storage.treerecovery$getCurrentChunkHolder(key) == null && !storage.treerecovery$getChunksToUnload().containsKey(key);
+    }
+
+    @Nullable
+    private static Edit prepare(ChunkPos chunkPos, NbtCompound nbt, BlockBox box, RecoveryTable table) {
+        if (nbt.getInt("DataVersion") != SharedConstants.getGameVersion().getSaveVersion().getId()
+                || ChunkSerializer.getChunkType(nbt) != ChunkStatus.ChunkType.LEVELCHUNK) {
+            // Older data needs the datafixers and unfinished chunks are still generating; leave both to a real load.
+            return null;
+        }
+        IntOpenHashSet playerStripped = new IntOpenHashSet(nbt.getIntArray(PlayerStrippedChunk.NBT_KEY));
+        if (table.isPlayerStrippedOnly() && playerStripped.isEmpty()) {
+            return null;
+        }
+        NbtCompound index = nbt.getCompound(StrippedSection.NBT_KEY);
+        boolean indexed = index.getInt("fingerprint") == table.getIndexFingerprint();
+        Edit edit = new Edit(chunkPos, nbt);
+        NbtList sections = nbt.getList("sections", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < sections.size(); i++) {
+            NbtCompound section = sections.getCompound(i);
+            int sectionY = section.getByte("Y");
+            int baseY = ChunkSectionPos.getBlockCoord(sectionY);
+            if (baseY + 15 < box.getMinY() || baseY > box.getMaxY() || !section.contains("block_states", NbtElement.COMPOUND_TYPE)) {
+                continue;
+            }
+            String indexKey = Integer.toString(sectionY);
+            long[] bits = null;
+            if (indexed) {
+                if (!index.contains(indexKey, NbtElement.LONG_ARRAY_TYPE)) {
+                    continue;
+                }
+                bits = index.getLongArray(indexKey);
+                if (bits.length != SectionBits.WORDS) {
+                    bits = null;
+                }
+            }
+            PalettedContainer<BlockState> states = BackupReader.BLOCK_STATES_CODEC
+                    .parse(NbtOps.INSTANCE, section.getCompound("block_states")).result().orElse(null);
+            if (states == null || bits == null && !states.hasAny(table::isRestorable)) {
+                continue;
+            }
+            if (restoreSection(edit, baseY, states, bits, box, table, playerStripped)) {
+                NbtElement encoded = BackupReader.BLOCK_STATES_CODEC.encodeStart(NbtOps.INSTANCE, states).result().orElse(null);
+                if (encoded == null) {
+                    return null;
+                }
+                section.put("block_states", encoded);
+                if (bits != null) {
+                    if (SectionBits.next(bits, 0) < 0) {
+                        index.remove(indexKey);
+                    } else {
+                        index.putLongArray(indexKey, bits);
+                    }
+                }
+            }
+        }
+        if (playerStripped.isEmpty()) {
+            nbt.remove(PlayerStrippedChunk.NBT_KEY);
+        } else {
+            nbt.putIntArray(PlayerStrippedChunk.NBT_KEY, playerStripped.toIntArray());
+        }
+        return edit;
+    }
+
+    private static boolean restoreSection(Edit edit, int baseY, PalettedContainer<BlockState> states, @Nullable long[] bits,
+                                          BlockBox box, RecoveryTable table, IntOpenHashSet playerStripped) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        boolean changed = false;
+        int index = bits != null ? SectionBits.next(bits, 0) : 0;
+        while (index >= 0 && index < SectionBits.BLOCKS) {
+            int x = SectionBits.x(index), y = SectionBits.y(index), z = SectionBits.z(index);
+            pos.set(edit.chunkPos.getStartX() + x, baseY + y, edit.chunkPos.getStartZ() + z);
+            BlockState state = states.get(x, y, z);
+            BlockState restoredState = box.contains(pos) ? table.getRestoredState(state) : null;
+            int packed = PlayerStrippedChunk.pack(pos.getX(), pos.getY(), pos.getZ());
+            if (restoredState != null && (!table.isPlayerStrippedOnly() || playerStripped.contains(packed))) {
+                if (BlockWriteBatch.isEquivalent(state, restoredState) && !state.hasBlockEntity() && !restoredState.hasBlockEntity()) {
+                    states.set(x, y, z, restoredState);
+                    edit.positions.add(pos.asLong());
+                    edit.oldStates.add(state);
+                    edit.newStates.add(restoredState);
+                    if (bits != null) {
+                        SectionBits.clear(bits, index);
+                    }
+                    playerStripped.remove(packed);
+                    changed = true;
+                } else {
+                    edit.skipped++;
+                }
+            }
+            index = bits != null ? SectionBits.next(bits, index + 1) : index + 1;
+        }
+        return changed;
+    }
+
+    /**
+     * The rewritten data of one chunk and the writes it contains. Without data the chunk could not be
+     * edited.
+     */
+    static final class Edit {
+        final ChunkPos chunkPos;
+        @Nullable
+        final NbtCompound nbt;
+        final LongArrayList positions = new LongArrayList();
+        final List<BlockState> oldStates = new ArrayList<>();
+        final List<BlockState> newStates = new ArrayList<>();
+        int skipped;
+
+        Edit(ChunkPos chunkPos, @Nullable NbtCompound nbt) {
+            this.chunkPos = chunkPos;
+            this.nbt = nbt;
+        }
+    }
+}
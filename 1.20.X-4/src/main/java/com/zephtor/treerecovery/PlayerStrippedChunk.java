@@ -0,0 +1,50 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.Chunk;
+
+/**
+ * Implemented by every chunk. Holds the positions inside the chunk that a player stripped with an
+ * axe, packed as {@code y << 8 | z << 4 | x} into a primitive int set that is saved with the chunk.
+ */
+public interface PlayerStrippedChunk {
+
+    String NBT_KEY = "treerecovery:player_stripped";
+
+    boolean treerecovery$isPlayerStripped(int packed);
+
+    void treerecovery$setPlayerStripped(int packed, boolean stripped);
+
+    int[] treerecovery$getPlayerStripped();
+
+    void treerecovery$loadPlayerStripped(int[] packed);
+
+    static boolean isPlayerStripped(Chunk chunk, BlockPos pos) {
+        return ((PlayerStrippedChunk) chunk).treerecovery$isPlayerStripped(pack(pos.getX(), pos.getY(), pos.getZ()));
+    }
+
+    static void setPlayerStripped(Chunk chunk, BlockPos pos, boolean stripped) {
+        PlayerStrippedChunk data = (PlayerStrippedChunk) chunk;
+        int packed = pack(pos.getX(), pos.getY(), pos.getZ());
+        if (data.treerecovery$isPlayerStripped(packed) != stripped) {
+            data.treerecovery$setPlayerStripped(packed, stripped);
+            chunk.setNeedsSaving(true);
+        }
+    }
+
+    static int pack(int x, int y, int z) {
+        return y << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    static int unpackX(int packed) {
+        return packed & 15;
+    }
+
+    static int unpackY(int packed) {
+        return packed >> 8;
+    }
+
+    static int unpackZ(int packed) {
+        return packed >> 4 & 15;
+    }
+}
@@ -0,0 +1,58 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+class PositionRestoreJob extends RestoreJob {
+
+    private final long[] positions;
+    private int cursor;
+
+    PositionRestoreJob(ServerWorld world, long[] positions) {
+        super(world, null);
+        this.positions = positions;
+        LongArrays.quickSort(this.positions, PositionRestoreJob::compareChunkOrder);
+    }
+
+    @Override
+    String describe() {
+        return "restore " + positions.length + " positions";
+    }
+
+    @Override
+    int run(RecoveryTable table, BlockWriteBatch batch, int budget) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int spent = 0;
+        while (spent < budget && cursor < positions.length) {
+            pos.set(positions[cursor++]);
+            spent++;
+            if (!world.isChunkLoaded(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()))) {
+                skipped++;
+                continue;
+            }
+            restore(table, batch, pos, world.getBlockState(pos));
+        }
+        return spent;
+    }
+
+    @Override
+    boolean isDone() {
+        return cursor >= positions.length;
+    }
+
+    static int compareChunkOrder(long a, long b) {
+        int result = Long.compare(chunkKey(a), chunkKey(b));
+        if (result != 0) {
+            return result;
+        }
+        result = Integer.compare(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(a)), ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(b)));
+        return result != 0 ? result : Long.compare(a, b);
+    }
+
+    private static long chunkKey(long pos) {
+        return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(pos)), ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(pos)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Protection decisions of one world, cached per player and chunk until they expire. Lookups run on
+ * the world thread. Invalidations may come from any thread and are applied before the next lookup.
+ */
+class ProtectionCache {
+
+    private static final int PRUNE_THRESHOLD = 256;
+
+    private final ServerWorld world;
+    // Entries pack the expiry tick above the decision bit.
+    private final Map<UUID, Long2LongOpenHashMap> decisions = new HashMap<>();
+    private final Queue<Long> invalidatedChunks = new ConcurrentLinkedQueue<>();
+    private final Queue<UUID> invalidatedPlayers = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean clearRequested = new AtomicBoolean();
+
+    ProtectionCache(ServerWorld world) {
+        this.world = world;
+    }
+
+    boolean canRestore(List<ProtectionCheck> checks, PlayerEntity player, BlockPos pos, int ttlTicks) {
+        if (checks.isEmpty()) {
+            return true;
+        }
+        applyInvalidations();
+        long now = world.getTime();
+        long chunk = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+        Long2LongOpenHashMap byChunk = decisions.computeIfAbsent(player.getUuid(), uuid -> new Long2LongOpenHashMap());
+        long cached = byChunk.getOrDefault(chunk, -1L);
+        if (cached >= 0 && cached >>> 1 > now) {
+            return (cached & 1L) != 0;
+        }
+        boolean allowed = true;
+        for (ProtectionCheck check : checks) {
+            if (!check.canRestore(player, world, pos)) {
+                allowed = false;
+                break;
+            }
+        }
+        if (byChunk.size() >= PRUNE_THRESHOLD) {
+            byChunk.long2LongEntrySet().removeIf(entry -> entry.getLongValue() >>> 1 <= now);
+        }
+        byChunk.put(chunk, (now + ttlTicks) << 1 | (allowed ? 1L : 0L));
+        return allowed;
+    }
+
+    void invalidate(ChunkPos chunk) {
+        invalidatedChunks.add(chunk.toLong());
+    }
+
+    void invalidate(UUID player) {
+        invalidatedPlayers.add(player);
+    }
+
+    void invalidateAll() {
+        clearRequested.set(true);
+    }
+
+    private void applyInvalidations() {
+        if (clearRequested.getAndSet(false)) {
+            decisions.clear();
+            invalidatedChunks.clear();
+            invalidatedPlayers.clear();
+            return;
+        }
+        UUID player;
+        while ((player = invalidatedPlayers.poll()) != null) {
+            decisions.remove(player);
+        }
+        Long chunk;
+        while ((chunk = invalidatedChunks.poll()) != null) {
+            for (Long2LongMap byChunk : decisions.values()) {
+                byChunk.remove(chunk.longValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Asks a claim or permission mod whether a player may restore blocks at a position. Register one
+ * with {@link TreeRecoveryApi#registerProtectionCheck}.
+ * <p>
+ * Answers are cached per player and chunk for a short time, so a check should answer for the whole
+ * chunk of {@code pos}. Call one of the {@code TreeRecoveryApi.invalidateProtection} methods when
+ * claims change to drop cached answers early.
+ */
+@FunctionalInterface
+public interface ProtectionCheck {
+
+    boolean canRestore(PlayerEntity player, ServerWorld world, BlockPos pos);
+}
@@ -0,0 +1,404 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.StateTransformTable;
+import com.zephtor.treerecovery.core.TableCache;
+import com.zephtor.treerecovery.core.ToolDecisionTable;
+import com.zephtor.treerecovery.mixin.AxeItemAccessor;
+import it.unimi.dsi.fastutil.objects.Reference2FloatOpenHashMap;
+import net.fabricmc.fabric.api.tag.convention.v1.ConventionalItemTags;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.item.Item;
+import net.minecraft.item.Items;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.registry.tag.ItemTags;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of the loaded configuration. A new table is built on every (re)load and
+ * published as a whole, so handlers running on any world thread always see a consistent set.
+ */
+final class RecoveryTable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    static final RecoveryTable DEFAULT = defaults(DataPackMappings.Mappings.EMPTY, null);
+    private static volatile long registryHash;
+
+    private final TransformTable transforms;
+    private final Reference2FloatOpenHashMap<Block> randomRegrowthChances;
+    private final ToolRules toolRules;
+    private final RegionPolicy regionPolicy;
+    private final Config config;
+    private final int indexFingerprint;
+
+    /**
+     * Compiles the config merged with the mappings shipped in data packs. Safe to call off the
+     * server thread once registries and tags are loaded. The per-state tables are taken from
+     * {@code cache} when it holds them for the same registries and rules, and saved to it otherwise.
+     */
+    RecoveryTable(Set<Item> axes, Set<Block> strippedLogs, Set<Block> strippedWoods, Map<Block, Float> randomRegrowthChances,
+                  Config config, DataPackMappings.Mappings dataPack, @Nullable TableCache cache) {
+        Set<Item> axeSet = new HashSet<>(axes);
+        for (String id : dataPack.axes()) {
+            Registries.ITEM.getOrEmpty(new Identifier(id)).ifPresent(axeSet::add);
+        }
+        axeSet = Set.copyOf(axeSet);
+        List<Transform> transformList = new ArrayList<>();
+        Map<Block, Block> unstripped = new HashMap<>();
+        AxeItemAccessor.treerecovery$getStrippedBlocks().forEach((natural, stripped) -> unstripped.put(stripped, natural));
+        Set<Block> bark = new HashSet<>(strippedLogs);
+        bark.addAll(strippedWoods);
+        // Raw id order keeps transform indices stable across boots for the table cache.
+        for (Block block : bark.stream().sorted(Comparator.comparingInt(Registries.BLOCK::getRawId)).toList()) {
+            Block natural = unstripped.get(block);
+            if (natural != null) {
+                transformList.add(new Transform(block, natural, axeSet, 1, true));
+            } else {
+                LOGGER.warn("{} is not a stripped block, ignoring it", Registries.BLOCK.getId(block));
+            }
+        }
+        for (Map.Entry<String, String> pair : new TreeMap<>(dataPack.stripped()).entrySet()) {
+            Optional<Block> from = Registries.BLOCK.getOrEmpty(new Identifier(pair.getKey()));
+            Optional<Block> to = Registries.BLOCK.getOrEmpty(new Identifier(pair.getValue()));
+            if (from.isPresent() && to.isPresent()) {
+                transformList.add(new Transform(from.get(), to.get(), axeSet, 1, true));
+            } else {
+                LOGGER.warn("Ignoring unknown stripped mapping {} -> {}", pair.getKey(), pair.getValue());
+            }
+        }
+        List<Config.TransformEntry> entries = new ArrayList<>();
+        if (config.transforms != null) {
+            entries.addAll(config.transforms);
+        }
+        entries.addAll(dataPack.transforms());
+        for (Config.TransformEntry entry : entries) {
+            Optional<Block> from = entry.from == null ? Optional.empty() : Registries.BLOCK.getOrEmpty(new Identifier(entry.from));
+            Optional<Block> to = entry.to == null ? Optional.empty() : Registries.BLOCK.getOrEmpty(new Identifier(entry.to));
+            if (from.isEmpty() || to.isEmpty() || entry.tool == null) {
+                LOGGER.warn("Ignoring incomplete transform {} -> {}", entry.from, entry.to);
+                continue;
+            }
+            transformList.add(new Transform(from.get(), to.get(), resolveTools(entry.tool, axeSet), entry.durability, false));
+        }
+        // Without a cache there is nothing to key, so the default table built at class init never hashes registries.
+        long cacheKey = cache == null ? 0L : cacheKey(transformList, config.rules);
+        TableCache.Entry cached = load(cache, cacheKey);
+        if (cached != null) {
+            this.transforms = new TransformTable(transformList, cached.transforms());
+            this.toolRules = new ToolRules(cached.tools());
+        } else {
+            StateTransformTable stateTable = TransformTable.compile(transformList);
+            ToolDecisionTable toolTable = ToolRules.compile(transformList, config.rules);
+            save(cache, cacheKey, stateTable, toolTable);
+            this.transforms = new TransformTable(transformList, stateTable);
+            this.toolRules = new ToolRules(toolTable);
+        }
+        this.randomRegrowthChances = new Reference2FloatOpenHashMap<>(randomRegrowthChances);
+        this.regionPolicy = RegionPolicy.compile(config);
+        this.config = config;
+        int[] rawIds = transformList.stream().filter(Transform::bark).map(Transform::source)
+                .mapToInt(Registries.BLOCK::getRawId).sorted().distinct().toArray();
+        int fingerprint = 31 * Arrays.hashCode(rawIds) + Registries.BLOCK.size();
+        this.indexFingerprint = fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Builds the table used when there is no config file. Item tags are resolved at call time, so
+     * this has to run again once the server has loaded them.
+     */
+    static RecoveryTable defaults(DataPackMappings.Mappings dataPack, @Nullable TableCache cache) {
+        return new RecoveryTable(
+                Set.of(Items.WOODEN_AXE, Items.STONE_AXE, Items.IRON_AXE, Items.GOLDEN_AXE, Items.DIAMOND_AXE),
+                Set.of(Blocks.STRIPPED_OAK_LOG, Blocks.STRIPPED_SPRUCE_LOG, Blocks.STRIPPED_BIRCH_LOG,
+                        Blocks.STRIPPED_JUNGLE_LOG, Blocks.STRIPPED_ACACIA_LOG, Blocks.STRIPPED_DARK_OAK_LOG),
+                Set.of(Blocks.STRIPPED_OAK_WOOD, Blocks.STRIPPED_SPRUCE_WOOD, Blocks.STRIPPED_BIRCH_WOOD,
+                        Blocks.STRIPPED_JUNGLE_WOOD, Blocks.STRIPPED_ACACIA_WOOD, Blocks.STRIPPED_DARK_OAK_WOOD),
+                Map.of(), new Config(), dataPack, cache);
+    }
+
+    @Nullable
+    private static TableCache.Entry load(@Nullable TableCache cache, long key) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            TableCache.Entry entry = cache.load(key);
+            if (entry != null && entry.transforms().size() == Block.STATE_IDS.size()) {
+                LOGGER.debug("Loaded compiled tables {} from cache", Long.toHexString(key));
+                return entry;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read compiled table cache, rebuilding", e);
+        }
+        return null;
+    }
+
+    private static void save(@Nullable TableCache cache, long key, StateTransformTable transforms, ToolDecisionTable tools) {
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.save(key, transforms, tools);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write compiled table cache", e);
+        }
+    }
+
+    /**
+     * Key of everything the per-state tables depend on: the block and item registries, the resolved
+     * transforms and the tool rules.
+     */
+    private static long cacheKey(List<Transform> transformList, @Nullable List<Config.ToolRule> rules) {
+        long key = TableCache.hash(registryHash, transformList.size());
+        for (Transform transform : transformList) {
+            key = TableCache.hash(key, Registries.BLOCK.getRawId(transform.source()));
+            key = TableCache.hash(key, Registries.BLOCK.getRawId(transform.target()));
+            key = TableCache.hash(key, transform.cost());
+            key = TableCache.hash(key, transform.bark() ? 1L : 0L);
+            int[] tools = transform.tools().stream().mapToInt(Registries.ITEM::getRawId).sorted().toArray();
+            key = TableCache.hash(key, tools.length);
+            for (int tool : tools) {
+                key = TableCache.hash(key, tool);
+            }
+        }
+        if (rules != null) {
+            for (Config.ToolRule rule : rules) {
+                key = hashIds(key, rule.tools);
+                key = hashIds(key, rule.blocks);
+                key = TableCache.hash(key, rule.allow == null ? Long.MIN_VALUE : rule.allow ? 1L : 0L);
+                key = TableCache.hash(key, rule.durability == null ? Long.MIN_VALUE : rule.durability);
+            }
+        }
+        return key;
+    }
+
+    private static long hashIds(long key, @Nullable List<String> ids) {
+        if (ids == null) {
+            return TableCache.hash(key, Long.MIN_VALUE);
+        }
+        key = TableCache.hash(key, ids.size());
+        for (String id : ids) {
+            key = TableCache.hash(key, id);
+        }
+        return key;
+    }
+
+    /**
+     * Recomputes the hash of the block and item registries, including how many states every block
+     * has. Called on every server start, once the registries are frozen, before any table is
+     * compiled against the cache.
+     */
+    static void updateRegistryHash() {
+        long hash = TableCache.hash(0L, Block.STATE_IDS.size());
+        for (Block block : Registries.BLOCK) {
+            hash = TableCache.hash(hash, Registries.BLOCK.getId(block).toString());
+            hash = TableCache.hash(hash, block.getStateManager().getStates().size());
+        }
+        for (Item item : Registries.ITEM) {
+            hash = TableCache.hash(hash, Registries.ITEM.getId(item).toString());
+        }
+        registryHash = hash;
+    }
+
+    /**
+     * Hash of the block and item registries as of the last {@link #updateRegistryHash}.
+     */
+    static long getRegistryHash() {
+        return registryHash;
+    }
+
+    private static Set<Item> resolveTools(String tool, Set<Item> axes) {
+        return switch (tool) {
+            case "axe" -> axes;
+            case "shovel" -> tagged(ItemTags.SHOVELS);
+            case "hoe" -> tagged(ItemTags.HOES);
+            case "pickaxe" -> tagged(ItemTags.PICKAXES);
+            case "sword" -> tagged(ItemTags.SWORDS);
+            case "shears" -> {
+                Set<Item> shears = new HashSet<>(tagged(ConventionalItemTags.SHEARS));
+                shears.add(Items.SHEARS);
+                yield Set.copyOf(shears);
+            }
+            default -> tool.startsWith("#")
+                    ? tagged(TagKey.of(RegistryKeys.ITEM, new Identifier(tool.substring(1))))
+                    : Registries.ITEM.getOrEmpty(new Identifier(tool)).map(Set::of).orElseGet(Set::of);
+        };
+    }
+
+    private static Set<Item> tagged(TagKey<Item> tag) {
+        Set<Item> items = new HashSet<>();
+        for (RegistryEntry<Item> entry : Registries.ITEM.iterateEntries(tag)) {
+            items.add(entry.value());
+        }
+        return Set.copyOf(items);
+    }
+
+    /**
+     * Identifies the set of restorable blocks, so indexes built against another set can be told apart.
+     * Never 0.
+     */
+    int getIndexFingerprint() {
+        return indexFingerprint;
+    }
+
+    int getBlocksPerTick() {
+        return Math.max(1, config.blocksPerTick);
+    }
+
+    /**
+     * Tick duration above which the governor starts deferring work, in nanoseconds.
+     */
+    long getTargetTickNanos() {
+        return (long) (Math.max(1.0, config.targetTickMillis) * 1_000_000.0);
+    }
+
+    int getMaxQueuedJobs() {
+        return Math.max(1, config.maxQueuedJobs);
+    }
+
+    boolean isJournalEnabled() {
+        return config.journal;
+    }
+
+    int getJournalSegmentBytes() {
+        return Math.max(1024, config.journalSegmentBytes);
+    }
+
+    boolean isAuditLogEnabled() {
+        return config.auditLog;
+    }
+
+    int getAuditBufferSize() {
+        return Math.max(2, config.auditBufferSize);
+    }
+
+    boolean isPlayerStrippedOnly() {
+        return config.playerStrippedOnly;
+    }
+
+    int getRegrowthDelayTicks() {
+        return Math.max(0, config.regrowthDelayTicks);
+    }
+
+    boolean hasRandomRegrowth() {
+        return !randomRegrowthChances.isEmpty();
+    }
+
+    /**
+     * Chance that a random tick landing on {@code blockState} grows its bark back, 0 if it never does.
+     */
+    float getRandomRegrowthChance(BlockState blockState) {
+        return randomRegrowthChances.getFloat(blockState.getBlock());
+    }
+
+    int getProtectionCacheTicks() {
+        return Math.max(0, config.protectionCacheTicks);
+    }
+
+    boolean isDispenserEnabled() {
+        return config.dispensers;
+    }
+
+    int getDispenserBlocksPerChunkTick() {
+        return Math.max(1, config.dispenserBlocksPerChunkTick);
+    }
+
+    int getDispenserQueueSize() {
+        return Math.max(0, config.dispenserQueueSize);
+    }
+
+    /**
+     * Strips and restores of one position within about a toggle window after which restoring it is
+     * refused, 0 if there is no limit.
+     */
+    int getToggleThreshold() {
+        return Math.max(0, config.toggleThreshold);
+    }
+
+    int getToggleWindowTicks() {
+        return Math.max(1, config.toggleWindowTicks);
+    }
+
+    /**
+     * Whether bulk jobs rewrite the saved data of unloaded chunks instead of skipping them.
+     */
+    boolean isOfflineEditEnabled() {
+        return config.offlineEdits;
+    }
+
+    /**
+     * Whether flushed writes play a merged sound and particle effect per section cluster.
+     */
+    boolean isRestoreEffectsEnabled() {
+        return config.restoreEffects;
+    }
+
+    boolean isAllowedAt(ServerWorld world, BlockPos pos) {
+        return regionPolicy.isAllowed(world, pos);
+    }
+
+    boolean isAxeIntegration() {
+        return "axe".equals(config.integration);
+    }
+
+    /**
+     * Whether {@code item} takes part in any transform, so clicks with anything else can be skipped
+     * without looking at the block.
+     */
+    boolean isTool(Item item) {
+        return toolRules.isTool(item);
+    }
+
+    /**
+     * Durability {@code item} loses restoring {@code blockState}, or {@link ToolRules#DENY} if it may not.
+     */
+    int getToolCost(BlockState blockState, Item item) {
+        return toolRules.getCost(blockState, item);
+    }
+
+    /**
+     * Whether {@code blockState} is a stripped log or wood that can grow its bark back.
+     */
+    boolean isRestorable(BlockState blockState) {
+        Transform transform = transforms.get(blockState);
+        return transform != null && transform.bark();
+    }
+
+    /**
+     * Returns the bark-covered state of a restorable block, or null.
+     */
+    @Nullable
+    BlockState getRestoredState(BlockState blockState) {
+        return isRestorable(blockState) ? transforms.getTarget(blockState) : null;
+    }
+
+    /**
+     * Returns the state {@code blockState} transforms back into, or null if no transform applies.
+     */
+    @Nullable
+    BlockState getTransformedState(BlockState blockState) {
+        return transforms.getTarget(blockState);
+    }
+}
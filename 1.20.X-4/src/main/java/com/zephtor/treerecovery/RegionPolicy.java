@@ -0,0 +1,194 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+import net.minecraft.world.biome.Biome;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where restoration is allowed, compiled from the {@code regions} rules of the config.
+ * <p>
+ * A cuboid rule beats a biome rule, which beats a dimension rule, which beats {@code allowByDefault}.
+ * Among rules of the same kind the one listed last wins. Cuboids are indexed by the chunks they
+ * overlap, so a check only looks at the few cuboids touching the chunk of the position. Cuboids
+ * spanning more than {@link #MAX_INDEXED_CHUNKS} chunks are kept in a short separate list that is
+ * checked after the chunk lookup, so a world-sized rule does not fill the index.
+ */
+final class RegionPolicy {
+
+    static final int MAX_INDEXED_CHUNKS = 4096;
+    static final RegionPolicy ALLOW_ALL = new RegionPolicy(true, Map.of(), null);
+
+    private final boolean allowByDefault;
+    private final Map<RegistryKey<World>, DimensionRules> dimensions;
+    @Nullable
+    private final DimensionRules otherDimensions;
+
+    private RegionPolicy(boolean allowByDefault, Map<RegistryKey<World>, DimensionRules> dimensions, @Nullable DimensionRules otherDimensions) {
+        this.allowByDefault = allowByDefault;
+        this.dimensions = dimensions;
+        this.otherDimensions = otherDimensions;
+    }
+
+    boolean isAllowed(ServerWorld world, BlockPos pos) {
+        DimensionRules rules = dimensions.get(world.getRegistryKey());
+        if (rules == null) {
+            rules = otherDimensions;
+        }
+        return rules == null ? allowByDefault : rules.isAllowed(world, pos, allowByDefault);
+    }
+
+    static RegionPolicy compile(Config config) {
+        if (config.regions == null || config.regions.isEmpty()) {
+            return config.allowByDefault ? ALLOW_ALL : new RegionPolicy(false, Map.of(), null);
+        }
+        // Rules without a dimension apply to every dimension, in their place in the list.
+        Map<RegistryKey<World>, DimensionRules> dimensions = new HashMap<>();
+        for (Config.RegionRule rule : config.regions) {
+            if (rule.dimension != null) {
+                dimensions.computeIfAbsent(RegistryKey.of(RegistryKeys.WORLD, new Identifier(rule.dimension)), key -> new DimensionRules());
+            }
+        }
+        DimensionRules otherDimensions = new DimensionRules();
+        for (int order = 0; order < config.regions.size(); order++) {
+            Config.RegionRule rule = config.regions.get(order);
+            if (rule.dimension == null) {
+                otherDimensions.add(rule, order);
+                for (DimensionRules rules : dimensions.values()) {
+                    rules.add(rule, order);
+                }
+            } else {
+                dimensions.get(RegistryKey.of(RegistryKeys.WORLD, new Identifier(rule.dimension))).add(rule, order);
+            }
+        }
+        otherDimensions.sort();
+        dimensions.values().forEach(DimensionRules::sort);
+        return new RegionPolicy(config.allowByDefault, Map.copyOf(dimensions), otherDimensions);
+    }
+
+    private static final class DimensionRules {
+        private final Long2ObjectOpenHashMap<Cuboid[]> cuboidsByChunk = new Long2ObjectOpenHashMap<>();
+        private final List<Cuboid> largeCuboidList = new ArrayList<>();
+        private Cuboid[] largeCuboids = new Cuboid[0];
+        private final Map<RegistryKey<Biome>, Boolean> biomes = new HashMap<>();
+        @Nullable
+        private Boolean dimension;
+
+        void add(Config.RegionRule rule, int order) {
+            RegistryKey<Biome> biome = rule.biome == null ? null : RegistryKey.of(RegistryKeys.BIOME, new Identifier(rule.biome));
+            if (rule.from == null || rule.to == null || rule.from.length != 3 || rule.to.length != 3) {
+                if (biome != null) {
+                    biomes.put(biome, rule.allow);
+                } else {
+                    dimension = rule.allow;
+                }
+                return;
+            }
+            Cuboid cuboid = new Cuboid(Math.min(rule.from[0], rule.to[0]), Math.min(rule.from[1], rule.to[1]), Math.min(rule.from[2], rule.to[2]),
+                    Math.max(rule.from[0], rule.to[0]), Math.max(rule.from[1], rule.to[1]), Math.max(rule.from[2], rule.to[2]),
+                    biome, rule.allow, order);
+            long chunks = (long) (ChunkSectionPos.getSectionCoord(cuboid.maxX) - ChunkSectionPos.getSectionCoord(cuboid.minX) + 1)
+                    * (ChunkSectionPos.getSectionCoord(cuboid.maxZ) - ChunkSectionPos.getSectionCoord(cuboid.minZ) + 1);
+            if (chunks > MAX_INDEXED_CHUNKS) {
+                largeCuboidList.add(cuboid);
+                return;
+            }
+            for (int chunkX = ChunkSectionPos.getSectionCoord(cuboid.minX); chunkX <= ChunkSectionPos.getSectionCoord(cuboid.maxX); chunkX++) {
+                for (int chunkZ = ChunkSectionPos.getSectionCoord(cuboid.minZ); chunkZ <= ChunkSectionPos.getSectionCoord(cuboid.maxZ); chunkZ++) {
+                    long key = ChunkPos.toLong(chunkX, chunkZ);
+                    Cuboid[] existing = cuboidsByChunk.get(key);
+                    if (existing == null) {
+                        cuboidsByChunk.put(key, new Cuboid[]{cuboid});
+                    } else {
+                        Cuboid[] grown = Arrays.copyOf(existing, existing.length + 1);
+                        grown[existing.length] = cuboid;
+                        cuboidsByChunk.put(key, grown);
+                    }
+                }
+            }
+        }
+
+        void sort() {
+            Comparator<Cuboid> newestFirst = Comparator.comparingInt((Cuboid cuboid) -> cuboid.order).reversed();
+            for (Cuboid[] cuboids : cuboidsByChunk.values()) {
+                Arrays.sort(cuboids, newestFirst);
+            }
+            cuboidsByChunk.trim();
+            largeCuboids = largeCuboidList.toArray(new Cuboid[0]);
+            Arrays.sort(largeCuboids, newestFirst);
+            largeCuboidList.clear();
+        }
+
+        boolean isAllowed(ServerWorld world, BlockPos pos, boolean allowByDefault) {
+            Cuboid cuboid = firstMatch(cuboidsByChunk.get(ChunkPos.toLong(ChunkSectionPos.getSectionCoord(pos.getX()),
+                    ChunkSectionPos.getSectionCoord(pos.getZ()))), 0, world, pos);
+            Cuboid large = firstMatch(largeCuboids, cuboid == null ? 0 : cuboid.order + 1, world, pos);
+            if (large != null) {
+                return large.allow;
+            }
+            if (cuboid != null) {
+                return cuboid.allow;
+            }
+            if (!biomes.isEmpty()) {
+                Boolean allowed = biomes.get(world.getBiome(pos).getKey().orElse(null));
+                if (allowed != null) {
+                    return allowed;
+                }
+            }
+            return dimension != null ? dimension : allowByDefault;
+        }
+
+        /**
+         * Returns the newest of {@code cuboids} (sorted newest first) that applies to {@code pos}, ignoring
+         * cuboids listed before {@code minOrder}.
+         */
+        @Nullable
+        private static Cuboid firstMatch(@Nullable Cuboid[] cuboids, int minOrder, ServerWorld world, BlockPos pos) {
+            if (cuboids == null) {
+                return null;
+            }
+            RegistryKey<Biome> biome = null;
+            for (Cuboid cuboid : cuboids) {
+                if (cuboid.order < minOrder) {
+                    return null;
+                }
+                if (!cuboid.contains(pos)) {
+                    continue;
+                }
+                if (cuboid.biome != null) {
+                    if (biome == null) {
+                        biome = world.getBiome(pos).getKey().orElse(null);
+                    }
+                    if (!cuboid.biome.equals(biome)) {
+                        continue;
+                    }
+                }
+                return cuboid;
+            }
+            return null;
+        }
+    }
+
+    private record Cuboid(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                          @Nullable RegistryKey<Biome> biome, boolean allow, int order) {
+
+        boolean contains(BlockPos pos) {
+            return pos.getX() >= minX && pos.getX() <= maxX && pos.getY() >= minY && pos.getY() <= maxY
+                    && pos.getZ() >= minZ && pos.getZ() <= maxZ;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.TimingWheel;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Timed bark regrowth of one world. Stripped positions wait in a {@link TimingWheel} until their
+ * deadline and are then restored through the world's budgeted write path. Positions whose chunk is
+ * not loaded when they fall due wait for that chunk to load.
+ * <p>
+ * Pending entries are saved with the world into one file per region, rewriting only the regions
+ * that changed since the last save. Every pending position is also kept per region with its
+ * deadline, so a save only copies the entries of the changed regions instead of walking the wheel.
+ * Stripping a position again before it regrows restarts its delay.
+ */
+class RegrowthScheduler {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x54524752;
+
+    private final ServerWorld world;
+    private final Path directory;
+    private final TimingWheel wheel;
+    private final LongArrayFIFOQueue due = new LongArrayFIFOQueue();
+    private final Long2ObjectMap<LongArrayList> waitingForLoad = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<Long2LongOpenHashMap> pendingByRegion = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet dirtyRegions = new LongOpenHashSet();
+    private final Job job;
+    private CompletableFuture<Void> pendingSave = CompletableFuture.completedFuture(null);
+
+    RegrowthScheduler(ServerWorld world, Path directory) {
+        this.world = world;
+        this.directory = directory;
+        this.wheel = new TimingWheel(world.getTime());
+        this.job = new Job(world);
+        load();
+    }
+
+    RestoreJob job() {
+        return job;
+    }
+
+    void schedule(BlockPos pos, long delay) {
+        long deadline = world.getTime() + delay;
+        wheel.schedule(pos.asLong(), deadline);
+        track(pos.asLong(), deadline);
+        markDirty(pos.asLong());
+    }
+
+    void tick() {
+        wheel.advance(world.getTime(), (pos, deadline) -> {
+            // Entries superseded by a later schedule of the same position are skipped.
+            if (pendingDeadline(pos) == deadline) {
+                due.enqueue(pos);
+            }
+        });
+    }
+
+    void onChunkLoaded(ChunkPos chunkPos) {
+        LongArrayList waiting = waitingForLoad.remove(chunkPos.toLong());
+        if (waiting != null) {
+            waiting.forEach(due::enqueue);
+        }
+    }
+
+    void save() {
+        if (dirtyRegions.isEmpty()) {
+            return;
+        }
+        Long2ObjectMap<LongArrayList> byRegion = new Long2ObjectOpenHashMap<>();
+        for (long region : dirtyRegions) {
+            LongArrayList entries = new LongArrayList();
+            Long2LongOpenHashMap pending = pendingByRegion.get(region);
+            if (pending != null) {
+                for (Long2LongMap.Entry entry : pending.long2LongEntrySet()) {
+                    entries.add(entry.getLongKey());
+                    entries.add(entry.getLongValue());
+                }
+            }
+            byRegion.put(region, entries);
+        }
+        dirtyRegions.clear();
+        // Chained so that two saves of the same region never overtake each other.
+        pendingSave = pendingSave.thenRunAsync(() -> byRegion.long2ObjectEntrySet()
+                .forEach(entry -> write(entry.getLongKey(), entry.getValue())), Util.getIoWorkerExecutor());
+    }
+
+    /**
+     * Saves the changed regions and waits until they are on disk.
+     */
+    void close() {
+        save();
+        pendingSave.join();
+    }
+
+    private void track(long pos, long deadline) {
+        pendingByRegion.computeIfAbsent(regionKey(pos), key -> {
+            Long2LongOpenHashMap pending = new Long2LongOpenHashMap();
+            pending.defaultReturnValue(Long.MIN_VALUE);
+            return pending;
+        }).put(pos, deadline);
+    }
+
+    private long pendingDeadline(long pos) {
+        Long2LongOpenHashMap pending = pendingByRegion.get(regionKey(pos));
+        return pending == null ? Long.MIN_VALUE : pending.get(pos);
+    }
+
+    /**
+     * Forgets {@code pos} once it has been handled, unless it was scheduled again for a later tick.
+     */
+    private void untrack(long pos, long now) {
+        long region = regionKey(pos);
+        Long2LongOpenHashMap pending = pendingByRegion.get(region);
+        if (pending != null && pending.get(pos) <= now) {
+            pending.remove(pos);
+            if (pending.isEmpty()) {
+                pendingByRegion.remove(region);
+            }
+        }
+    }
+
+    private void write(long region, LongArrayList entries) {
+        Path file = directory.resolve("r." + ChunkPos.getPackedX(region) + "." + ChunkPos.getPackedZ(region) + ".bin");
+        try {
+            if (entries.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Files.createDirectories(directory);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entries.size() / 2);
+                for (int i = 0; i < entries.size(); i++) {
+                    out.writeLong(entries.getLong(i));
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Failed to save regrowth schedule {}", file, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> regionFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            regionFiles = files.filter(path -> path.getFileName().toString().endsWith(".bin")).collect(Collectors.toList());
+        } catch (IOException e) {
+            LOGGER.error("Failed to list regrowth schedule of {}", world.getRegistryKey().getValue(), e);
+            return;
+        }
+        for (Path file : regionFiles) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    LOGGER.warn("Ignoring unknown regrowth file {}", file);
+                    continue;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long pos = in.readLong();
+                    long deadline = in.readLong();
+                    wheel.schedule(pos, deadline);
+                    track(pos, deadline);
+                }
+            } catch (IOException e) {
+                LOGGER.error("Failed to load regrowth schedule {}", file, e);
+            }
+        }
+    }
+
+    private void markDirty(long pos) {
+        dirtyRegions.add(regionKey(pos));
+    }
+
+    private static long regionKey(long pos) {
+        return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(pos)) >> 5,
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(pos)) >> 5);
+    }
+
+    /**
+     * Never-ending job that feeds due positions into the world's write budget.
+     */
+    private class Job extends RestoreJob {
+
+        Job(ServerWorld world) {
+            super(world, null);
+        }
+
+        @Override
+        int run(RecoveryTable table, BlockWriteBatch batch, int budget) {
+            BlockPos.Mutable pos = new BlockPos.Mutable();
+            int spent = 0;
+            while (spent < budget && !due.isEmpty()) {
+                long packed = due.dequeueLong();
+                pos.set(packed);
+                spent++;
+                int chunkX = ChunkSectionPos.getSectionCoord(pos.getX());
+                int chunkZ = ChunkSectionPos.getSectionCoord(pos.getZ());
+                if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                    waitingForLoad.computeIfAbsent(ChunkPos.toLong(chunkX, chunkZ), key -> new LongArrayList()).add(packed);
+                    continue;
+                }
+                untrack(packed, world.getTime());
+                markDirty(packed);
+                BlockState state = world.getBlockState(pos);
+                BlockState restoredState = table.getRestoredState(state);
+                if (restoredState != null) {
+                    write(batch, pos, state, restoredState);
+                }
+            }
+            return spent;
+        }
+
+        @Override
+        boolean isDone() {
+            return false;
+        }
+
+        @Override
+        String describe() {
+            return "regrowth";
+        }
+
+        @Override
+        boolean hasWork() {
+            return !due.isEmpty();
+        }
+
+        @Override
+        boolean isCancellable() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+abstract class RestoreJob implements BlockWriteBatch.Listener {
+
+    static final int DEFAULT_PRIORITY = 5;
+
+    final ServerWorld world;
+    @Nullable
+    final UUID actor;
+    final CompletableFuture<RestoreResult> future = new CompletableFuture<>();
+    /**
+     * Restored blocks per species, touched only on the world thread.
+     */
+    private final Object2IntOpenHashMap<Block> restored = new Object2IntOpenHashMap<>();
+    /**
+     * Total of {@link #restored}, written only on the world thread and safe to read from any thread.
+     */
+    private volatile int restoredCount;
+    int skipped;
+    int id;
+    volatile int priority = DEFAULT_PRIORITY;
+    volatile boolean paused;
+    /**
+     * Budget this job is owed by the {@link JobManager}, touched only while ticking.
+     */
+    double credit;
+    /**
+     * Edits unloaded chunks for this job, set by the world state when the job starts. Null if
+     * unloaded chunks are skipped.
+     */
+    @Nullable
+    OfflineChunkEditor offline;
+
+    RestoreJob(ServerWorld world, @Nullable UUID actor) {
+        this.world = world;
+        this.actor = actor;
+    }
+
+    /**
+     * Processes the next part of the job and returns the cost spent, at most {@code budget}.
+     */
+    abstract int run(RecoveryTable table, BlockWriteBatch batch, int budget);
+
+    abstract boolean isDone();
+
+    /**
+     * Whether the job could spend budget right now. Idle jobs get no share of the tick's budget.
+     * Called at the start of a server tick, while no world is ticking.
+     */
+    boolean hasWork() {
+        return !isDone();
+    }
+
+    /**
+     * Short description for {@code /treerecovery jobs list}.
+     */
+    abstract String describe();
+
+    boolean isCancellable() {
+        return true;
+    }
+
+    int getRestoredCount() {
+        return restoredCount;
+    }
+
+    boolean restore(RecoveryTable table, BlockWriteBatch batch, BlockPos pos, BlockState state) {
+        BlockState restoredState = table.getRestoredState(state);
+        if (restoredState == null || table.isPlayerStrippedOnly()
+                && !PlayerStrippedChunk.isPlayerStripped(world.getWorldChunk(pos), pos)) {
+            return false;
+        }
+        write(batch, pos, state, restoredState);
+        return true;
+    }
+
+    void write(BlockWriteBatch batch, BlockPos pos, BlockState oldState, BlockState newState) {
+        batch.add(pos, oldState, newState, actor, false, this);
+    }
+
+    /**
+     * Counts the writes of this job once the batch has applied them, so writes the flush skips are
+     * never reported as restored.
+     */
+    @Override
+    public void onWrite(ServerWorld world, long pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo) {
+        count(newState);
+    }
+
+    /**
+     * Counts a write made outside the batch.
+     */
+    void count(BlockState newState) {
+        restored.addTo(newState.getBlock(), 1);
+        restoredCount++;
+    }
+
+    /**
+     * Called when the job stops without completing, to drop work still in flight.
+     */
+    void release() {
+    }
+
+    void complete() {
+        Map<Block, Integer> bySpecies = new HashMap<>(restored);
+        future.complete(new RestoreResult(bySpecies, skipped));
+    }
+}
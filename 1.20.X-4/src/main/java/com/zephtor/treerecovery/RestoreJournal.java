@@ -0,0 +1,329 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only journal of every block TreeRecovery changed.
+ * <p>
+ * Records have a fixed size and are written by a background thread into a memory-mapped segment.
+ * A full segment is gzip-compressed and a new one is started. Reading walks the segments from the
+ * newest to the oldest and each segment backwards, holding at most one segment in memory.
+ * <p>
+ * The world thread never waits for the writer: while the queue is full, new records are dropped and
+ * counted, and the writer logs how many were lost. Dropped restorations cannot be undone.
+ */
+class RestoreJournal implements BlockWriteBatch.Listener {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x54524A32;
+    /**
+     * Magic, record count and the registry hash the raw state ids belong to.
+     */
+    private static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 52;
+    private static final String ACTIVE_SUFFIX = ".trj";
+    private static final String COMPRESSED_SUFFIX = ".trj.gz";
+    private static final String TEMP_SUFFIX = ".trj.gz.tmp";
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long registryHash;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(8192);
+    private final Map<Identifier, Integer> worldIndices = new ConcurrentHashMap<>();
+    private final List<Identifier> worlds = new CopyOnWriteArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int sequence;
+    private int recordCount;
+
+    /**
+     * Opens the journal in {@code directory}. Segments are keyed by {@code registryHash}, so raw state ids
+     * are never replayed against a registry with a different order.
+     */
+    RestoreJournal(Path directory, int segmentBytes, long registryHash) throws IOException {
+        this.directory = directory;
+        this.recordsPerSegment = Math.max(1, (segmentBytes - HEADER_SIZE) / RECORD_SIZE);
+        this.registryHash = registryHash;
+        Files.createDirectories(directory);
+        loadWorlds();
+        openActiveSegment();
+        this.writer = new Thread(this::drain, "TreeRecovery Journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Undo writes are not journaled. Otherwise a later, longer undo would read them first and replay
+     * the restorations an earlier undo reverted.
+     */
+    @Override
+    public void onWrite(ServerWorld world, long pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo) {
+        if (undo) {
+            return;
+        }
+        Entry entry = new Entry(world.getRegistryKey().getValue(), pos, Block.getRawIdFromState(oldState),
+                Block.getRawIdFromState(newState), actor, world.getTime(), System.currentTimeMillis());
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Entry> pending = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                pending.add(first);
+                queue.drainTo(pending);
+                for (Entry entry : pending) {
+                    append(entry);
+                }
+                pending.clear();
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    LOGGER.warn("Restoration journal fell behind, dropped {} records", lost);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                LOGGER.error("Failed to write restoration journal", e);
+                pending.clear();
+            }
+        }
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to close restoration journal", e);
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+        if (recordCount >= recordsPerSegment) {
+            rotate();
+        }
+        int offset = HEADER_SIZE + recordCount * RECORD_SIZE;
+        buffer.putInt(offset, worldIndex(entry.world));
+        buffer.putLong(offset + 4, entry.pos);
+        buffer.putInt(offset + 12, entry.oldState);
+        buffer.putInt(offset + 16, entry.newState);
+        buffer.putLong(offset + 20, entry.actor == null ? 0L : entry.actor.getMostSignificantBits());
+        buffer.putLong(offset + 28, entry.actor == null ? 0L : entry.actor.getLeastSignificantBits());
+        buffer.putLong(offset + 36, entry.tick);
+        buffer.putLong(offset + 44, entry.time);
+        buffer.putInt(4, ++recordCount);
+    }
+
+    /**
+     * Compresses the full segment into a temporary file that is only moved in place once complete, so a
+     * crash mid-way never leaves a truncated compressed copy that would win over the intact segment.
+     */
+    private void rotate() throws IOException {
+        buffer.force();
+        channel.close();
+        Path active = segmentPath(sequence, ACTIVE_SUFFIX);
+        Path temp = segmentPath(sequence, TEMP_SUFFIX);
+        try (InputStream in = Files.newInputStream(active);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+            in.transferTo(out);
+        }
+        Files.move(temp, segmentPath(sequence, COMPRESSED_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        deleteSegment(active);
+        sequence++;
+        createSegment();
+    }
+
+    private void deleteSegment(Path segment) {
+        try {
+            Files.delete(segment);
+        } catch (IOException e) {
+            // Still mapped on some platforms; the compressed copy wins when both exist.
+            segment.toFile().deleteOnExit();
+        }
+    }
+
+    private void openActiveSegment() throws IOException {
+        sequence = listSegments().stream().mapToInt(RestoreJournal::sequenceOf).max().orElse(0);
+        // Left over from a crash while compressing; the active segment is still intact.
+        Files.deleteIfExists(segmentPath(sequence, TEMP_SUFFIX));
+        Path active = segmentPath(sequence, ACTIVE_SUFFIX);
+        if (Files.exists(segmentPath(sequence, COMPRESSED_SUFFIX))) {
+            if (Files.exists(active)) {
+                deleteSegment(active);
+            }
+            sequence++;
+        } else if (Files.exists(active)) {
+            channel = FileChannel.open(active, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE);
+            if (buffer.getInt(0) == MAGIC && buffer.getLong(8) == registryHash) {
+                recordCount = Math.min(buffer.getInt(4), recordsPerSegment);
+                return;
+            }
+            channel.close();
+            sequence++;
+        }
+        createSegment();
+    }
+
+    private void createSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(sequence, ACTIVE_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, 0);
+        buffer.putLong(8, registryHash);
+        recordCount = 0;
+    }
+
+    private synchronized int worldIndex(Identifier world) throws IOException {
+        Integer index = worldIndices.get(world);
+        if (index == null) {
+            index = worlds.size();
+            worlds.add(world);
+            worldIndices.put(world, index);
+            try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("worlds.txt"), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(world.toString());
+                out.newLine();
+            }
+        }
+        return index;
+    }
+
+    private void loadWorlds() throws IOException {
+        Path file = directory.resolve("worlds.txt");
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    Identifier world = new Identifier(line.trim());
+                    worldIndices.put(world, worlds.size());
+                    worlds.add(world);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the journal from the newest record to the oldest until the visitor returns false.
+     * Segments written with a different block state registry are skipped.
+     */
+    void readBackwards(Visitor visitor) throws IOException {
+        List<Path> segments = listSegments();
+        segments.sort(Comparator.comparingInt(RestoreJournal::sequenceOf).reversed());
+        for (Path segment : segments) {
+            ByteBuffer data = readSegment(segment);
+            if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getLong(8) != registryHash) {
+                LOGGER.warn("Skipping journal segment {} written with a different registry", segment.getFileName());
+                continue;
+            }
+            int count = Math.min(data.getInt(4), (data.limit() - HEADER_SIZE) / RECORD_SIZE);
+            for (int i = count - 1; i >= 0; i--) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                int world = data.getInt(offset);
+                long most = data.getLong(offset + 20);
+                long least = data.getLong(offset + 28);
+                boolean keepGoing = visitor.visit(world < worlds.size() ? worlds.get(world) : null,
+                        data.getLong(offset + 4), data.getInt(offset + 12), data.getInt(offset + 16),
+                        most == 0L && least == 0L ? null : new UUID(most, least),
+                        data.getLong(offset + 36), data.getLong(offset + 44));
+                if (!keepGoing) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private ByteBuffer readSegment(Path segment) throws IOException {
+        if (segment.getFileName().toString().endsWith(COMPRESSED_SUFFIX)) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(segment))) {
+                return ByteBuffer.wrap(in.readAllBytes());
+            }
+        }
+        try (FileChannel readChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        Map<Integer, Path> bySequence = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (!name.startsWith("segment-")) {
+                    return;
+                }
+                if (name.endsWith(COMPRESSED_SUFFIX)) {
+                    bySequence.put(sequenceOf(path), path);
+                } else if (name.endsWith(ACTIVE_SUFFIX)) {
+                    bySequence.putIfAbsent(sequenceOf(path), path);
+                }
+            });
+        }
+        return new ArrayList<>(bySequence.values());
+    }
+
+    private Path segmentPath(int sequence, String suffix) {
+        return directory.resolve(String.format("segment-%08d%s", sequence, suffix));
+    }
+
+    private static int sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.indexOf('.')));
+    }
+
+    interface Visitor {
+        boolean visit(@Nullable Identifier world, long pos, int oldState, int newState, @Nullable UUID actor, long tick, long time);
+    }
+
+    private record Entry(Identifier world, long pos, int oldState, int newState, @Nullable UUID actor, long tick, long time) {
+    }
+}
@@ -0,0 +1,130 @@
+package com.zephtor.treerecovery;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Dry run of a box restore. The server thread copies the block state containers of the sections
+ * whose palette holds a restorable state; everything else, counting blocks per species and per
+ * chunk included, runs on the world's executor against those copies. Nothing in the world changes.
+ */
+final class RestorePlanner {
+
+    static final int MAX_CHUNKS = 4096;
+
+    private RestorePlanner() {
+    }
+
+    /**
+     * Snapshots the box and plans it off-thread. Must be called on the thread ticking {@code world}.
+     */
+    static CompletableFuture<Plan> plan(ServerWorld world, BlockBox box, RecoveryTable table, Executor executor) {
+        Snapshots snapshots = snapshot(world, box, table);
+        return CompletableFuture.supplyAsync(() -> count(box, table, snapshots), executor);
+    }
+
+    /**
+     * Copies the block states of every loaded section inside {@code box} that may hold a restorable
+     * block. Must be called on the thread ticking {@code world}; the copies may be read anywhere.
+     */
+    static Snapshots snapshot(ServerWorld world, BlockBox box, RecoveryTable table) {
+        int minChunkX = ChunkSectionPos.getSectionCoord(box.getMinX());
+        int maxChunkX = ChunkSectionPos.getSectionCoord(box.getMaxX());
+        int minChunkZ = ChunkSectionPos.getSectionCoord(box.getMinZ());
+        int maxChunkZ = ChunkSectionPos.getSectionCoord(box.getMaxZ());
+        int minSectionY = ChunkSectionPos.getSectionCoord(Math.max(box.getMinY(), world.getBottomY()));
+        int maxSectionY = ChunkSectionPos.getSectionCoord(Math.min(box.getMaxY(), world.getTopY() - 1));
+        List<Snapshot> sections = new ArrayList<>();
+        int loadedChunks = 0;
+        int unloadedChunks = 0;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                WorldChunk chunk = world.getChunkManager().getWorldChunk(chunkX, chunkZ);
+                if (chunk == null) {
+                    unloadedChunks++;
+                    continue;
+                }
+                loadedChunks++;
+                IntOpenHashSet playerStripped = null;
+                for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                    ChunkSection section = chunk.getSection(world.sectionCoordToIndex(sectionY));
+                    if (section.isEmpty() || !section.hasAny(table::isRestorable)) {
+                        continue;
+                    }
+                    if (playerStripped == null && table.isPlayerStrippedOnly()) {
+                        playerStripped = new IntOpenHashSet(((PlayerStrippedChunk) chunk).treerecovery$getPlayerStripped());
+                    }
+                    sections.add(new Snapshot(chunkX, sectionY, chunkZ, section.getBlockStateContainer().copy(), playerStripped));
+                }
+            }
+        }
+        return new Snapshots(sections, loadedChunks * Math.max(0, maxSectionY - minSectionY + 1), unloadedChunks);
+    }
+
+    private static Plan count(BlockBox box, RecoveryTable table, Snapshots snapshots) {
+        Reference2IntOpenHashMap<Block> bySpecies = new Reference2IntOpenHashMap<>();
+        Long2IntOpenHashMap byChunk = new Long2IntOpenHashMap();
+        int blocks = 0;
+        for (Snapshot snapshot : snapshots.sections()) {
+            int baseX = ChunkSectionPos.getBlockCoord(snapshot.chunkX);
+            int baseY = ChunkSectionPos.getBlockCoord(snapshot.sectionY);
+            int baseZ = ChunkSectionPos.getBlockCoord(snapshot.chunkZ);
+            for (int y = Math.max(baseY, box.getMinY()); y <= Math.min(baseY + 15, box.getMaxY()); y++) {
+                for (int z = Math.max(baseZ, box.getMinZ()); z <= Math.min(baseZ + 15, box.getMaxZ()); z++) {
+                    for (int x = Math.max(baseX, box.getMinX()); x <= Math.min(baseX + 15, box.getMaxX()); x++) {
+                        BlockState restoredState = table.getRestoredState(snapshot.states.get(x & 15, y & 15, z & 15));
+                        if (restoredState == null || snapshot.playerStripped != null
+                                && !snapshot.playerStripped.contains(PlayerStrippedChunk.pack(x, y, z))) {
+                            continue;
+                        }
+                        bySpecies.addTo(restoredState.getBlock(), 1);
+                        byChunk.addTo(ChunkPos.toLong(snapshot.chunkX, snapshot.chunkZ), 1);
+                        blocks++;
+                    }
+                }
+            }
+        }
+        // Mirrors what BoxRestoreJob charges: one per block, one per visited section and unloaded chunk.
+        long cost = (long) blocks + snapshots.visitedSections() + snapshots.unloadedChunks();
+        return new Plan(box, blocks, byChunk.size(), snapshots.unloadedChunks(), bySpecies, byChunk, cost);
+    }
+
+    static long countChunks(BlockBox box) {
+        return (long) (ChunkSectionPos.getSectionCoord(box.getMaxX()) - ChunkSectionPos.getSectionCoord(box.getMinX()) + 1)
+                * (ChunkSectionPos.getSectionCoord(box.getMaxZ()) - ChunkSectionPos.getSectionCoord(box.getMinZ()) + 1);
+    }
+
+    record Snapshot(int chunkX, int sectionY, int chunkZ, PalettedContainer<BlockState> states,
+                    @Nullable IntOpenHashSet playerStripped) {
+    }
+
+    /**
+     * Section copies of a box. {@code visitedSections} counts every section of a loaded chunk in the
+     * box, copied or not.
+     */
+    record Snapshots(List<Snapshot> sections, int visitedSections, int unloadedChunks) {
+    }
+
+    /**
+     * Outcome of a dry run. {@code chunks} counts the chunks with at least one block to restore.
+     */
+    record Plan(BlockBox box, int blocks, int chunks, int unloadedChunks, Reference2IntOpenHashMap<Block> bySpecies,
+                Long2IntOpenHashMap byChunk, long cost) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.block.Block;
+
+import java.util.Collections;
+import java.util.Map;
+
+public final class RestoreResult {
+
+    private final Map<Block, Integer> restoredBySpecies;
+    private final int restored;
+    private final int skipped;
+
+    RestoreResult(Map<Block, Integer> restoredBySpecies, int skipped) {
+        this.restoredBySpecies = Collections.unmodifiableMap(restoredBySpecies);
+        this.restored = restoredBySpecies.values().stream().mapToInt(Integer::intValue).sum();
+        this.skipped = skipped;
+    }
+
+    /**
+     * Number of restored blocks keyed by the block they were restored to.
+     */
+    public Map<Block, Integer> getRestoredBySpecies() {
+        return restoredBySpecies;
+    }
+
+    public int getRestored() {
+        return restored;
+    }
+
+    /**
+     * Number of requested positions or chunks that were left alone. Position restores, undos and
+     * backup restores count each block whose chunk was not loaded when its turn came; backup restores
+     * also count blocks that changed since the backup was compared. Box restores count each unloaded
+     * chunk they did not edit offline, and each block of an offline edited chunk whose restoration
+     * would change light, shape or a block entity.
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,81 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.TickGovernor;
+import net.minecraft.server.world.ServerWorld;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Routes restore jobs to the state of their world. Each world drains its own jobs on its own tick,
+ * within the share the {@link JobManager} gives them of the per-tick budget of the current
+ * {@link RecoveryTable}, scaled by the {@link TickGovernor}.
+ * Jobs may be submitted from any thread.
+ */
+class RestoreScheduler {
+
+    private final Supplier<RecoveryTable> table;
+    private final BlockWriteBatch.Listener listener;
+    private final Map<ServerWorld, WorldRecoveryState> worlds = new ConcurrentHashMap<>();
+    final TickGovernor governor = new TickGovernor();
+    final JobManager jobs = new JobManager();
+
+    RestoreScheduler(Supplier<RecoveryTable> table, BlockWriteBatch.Listener listener) {
+        this.table = table;
+        this.listener = listener;
+    }
+
+    WorldRecoveryState get(ServerWorld world) {
+        return worlds.computeIfAbsent(world, key -> new WorldRecoveryState(key, listener, jobs));
+    }
+
+    /**
+     * Returns the state of {@code world} without creating it. Safe to call from any thread.
+     */
+    @Nullable
+    WorldRecoveryState peek(ServerWorld world) {
+        return worlds.get(world);
+    }
+
+    void submit(RestoreJob job) {
+        jobs.register(job);
+        get(job.world).submit(job, table.get().getMaxQueuedJobs());
+    }
+
+    /**
+     * Hands out the budget of the server tick that is starting, scaled by the governor.
+     */
+    void startTick() {
+        jobs.startTick(governor.scale(table.get().getBlocksPerTick()));
+    }
+
+    void tick(ServerWorld world) {
+        get(world).tick(table.get(), governor.getAllowance());
+    }
+
+    void forEachWorld(Consumer<WorldRecoveryState> action) {
+        worlds.values().forEach(action);
+    }
+
+    void save(ServerWorld world) {
+        WorldRecoveryState state = worlds.get(world);
+        if (state != null) {
+            state.regrowth.save();
+        }
+    }
+
+    void unload(ServerWorld world) {
+        WorldRecoveryState state = worlds.remove(world);
+        if (state != null) {
+            state.cancelAll();
+        }
+    }
+
+    void cancelAll() {
+        worlds.values().forEach(WorldRecoveryState::cancelAll);
+        worlds.clear();
+    }
+}
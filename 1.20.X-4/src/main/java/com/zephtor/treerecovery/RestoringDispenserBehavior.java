@@ -0,0 +1,38 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.block.DispenserBlock;
+import net.minecraft.block.dispenser.DispenserBehavior;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.math.BlockPointer;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.WorldEvents;
+
+/**
+ * Wraps the behaviour a dispenser would use for a restoring tool. When the block in front of the
+ * dispenser can be restored with the dispensed item it is restored instead, otherwise the wrapped
+ * behaviour runs as usual.
+ */
+class RestoringDispenserBehavior implements DispenserBehavior {
+
+    private final DispenserBehavior fallback;
+
+    RestoringDispenserBehavior(DispenserBehavior fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public ItemStack dispense(BlockPointer pointer, ItemStack stack) {
+        Direction direction = pointer.state().get(DispenserBlock.FACING);
+        DispenserRestorer.Result result = TreeRecovery.onDispense(pointer.world(), pointer.pos().offset(direction), stack);
+        if (result == null) {
+            return fallback.dispense(pointer, stack);
+        }
+        if (result == DispenserRestorer.Result.FULL) {
+            pointer.world().syncWorldEvent(WorldEvents.DISPENSER_FAILS, pointer.pos(), 0);
+        } else {
+            pointer.world().syncWorldEvent(WorldEvents.DISPENSER_DISPENSES, pointer.pos(), 0);
+            pointer.world().syncWorldEvent(WorldEvents.DISPENSER_ACTIVATED, pointer.pos(), direction.getId());
+        }
+        return stack;
+    }
+}
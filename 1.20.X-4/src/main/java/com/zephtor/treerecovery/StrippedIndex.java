@@ -0,0 +1,111 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.SectionBits;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Maintains the {@link StrippedSection} index. Sections are indexed lazily the first time they are
+ * asked about, kept up to date on every block change afterwards, and saved with their chunk so a
+ * reloaded chunk does not have to be scanned again. A config reload that changes the set of
+ * restorable blocks changes the fingerprint, which makes every older index stale.
+ */
+final class StrippedIndex {
+
+    private StrippedIndex() {
+    }
+
+    /**
+     * Returns the bitmap of restorable blocks in {@code section}, or null if it holds none.
+     */
+    @Nullable
+    static long[] bits(ChunkSection section, RecoveryTable table) {
+        StrippedSection data = (StrippedSection) section;
+        if (data.treerecovery$getIndexFingerprint() != table.getIndexFingerprint()) {
+            rebuild(section, table);
+        }
+        return data.treerecovery$getStrippedBits();
+    }
+
+    static int count(ChunkSection section, RecoveryTable table) {
+        bits(section, table);
+        return ((StrippedSection) section).treerecovery$getStrippedCount();
+    }
+
+    /**
+     * Returns the first set index at or after {@code from}, or -1 if there is none.
+     */
+    static int next(long[] bits, int from) {
+        return SectionBits.next(bits, from);
+    }
+
+    static void onBlockChanged(ChunkSection section, int x, int y, int z, BlockState oldState, BlockState newState, RecoveryTable table) {
+        StrippedSection data = (StrippedSection) section;
+        if (data.treerecovery$getIndexFingerprint() != table.getIndexFingerprint()) {
+            return;
+        }
+        boolean stripped = table.isRestorable(newState);
+        if (stripped != table.isRestorable(oldState)) {
+            data.treerecovery$setStripped(StrippedSection.index(x, y, z), stripped);
+        }
+    }
+
+    private static void rebuild(ChunkSection section, RecoveryTable table) {
+        long[] bits = null;
+        if (!section.isEmpty() && section.hasAny(table::isRestorable)) {
+            bits = new long[SectionBits.WORDS];
+            boolean any = false;
+            for (int index = 0; index < SectionBits.BLOCKS; index++) {
+                if (table.isRestorable(section.getBlockState(SectionBits.x(index), SectionBits.y(index), SectionBits.z(index)))) {
+                    SectionBits.set(bits, index);
+                    any = true;
+                }
+            }
+            if (!any) {
+                // The palette can still list states that no longer occur in the section.
+                bits = null;
+            }
+        }
+        ((StrippedSection) section).treerecovery$setStrippedIndex(table.getIndexFingerprint(), bits);
+    }
+
+    static void write(Chunk chunk, NbtCompound nbt, RecoveryTable table) {
+        NbtCompound index = new NbtCompound();
+        index.putInt("fingerprint", table.getIndexFingerprint());
+        ChunkSection[] sections = chunk.getSectionArray();
+        for (int i = 0; i < sections.length; i++) {
+            long[] bits = bits(sections[i], table);
+            if (bits != null) {
+                index.putLongArray(Integer.toString(chunk.sectionIndexToCoord(i)), bits);
+            }
+        }
+        nbt.put(StrippedSection.NBT_KEY, index);
+    }
+
+    static void read(Chunk chunk, NbtCompound nbt, RecoveryTable table) {
+        if (!nbt.contains(StrippedSection.NBT_KEY, NbtElement.COMPOUND_TYPE)) {
+            return;
+        }
+        NbtCompound index = nbt.getCompound(StrippedSection.NBT_KEY);
+        int fingerprint = index.getInt("fingerprint");
+        if (fingerprint != table.getIndexFingerprint()) {
+            return;
+        }
+        ChunkSection[] sections = chunk.getSectionArray();
+        for (int i = 0; i < sections.length; i++) {
+            String key = Integer.toString(chunk.sectionIndexToCoord(i));
+            long[] bits = null;
+            if (index.contains(key, NbtElement.LONG_ARRAY_TYPE)) {
+                bits = index.getLongArray(key);
+                if (bits.length != SectionBits.WORDS) {
+                    continue;
+                }
+            }
+            ((StrippedSection) sections[i]).treerecovery$setStrippedIndex(fingerprint, bits);
+        }
+    }
+}
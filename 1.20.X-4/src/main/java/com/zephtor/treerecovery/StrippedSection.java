@@ -0,0 +1,29 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.SectionBits;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Implemented by every chunk section. Holds a 4096-bit map of the restorable blocks in the section,
+ * indexed like the section's block states, together with the fingerprint of the
+ * {@link RecoveryTable} it was built against. A fingerprint of 0 means the section was never indexed.
+ */
+public interface StrippedSection {
+
+    String NBT_KEY = "treerecovery:stripped_index";
+
+    int treerecovery$getIndexFingerprint();
+
+    @Nullable
+    long[] treerecovery$getStrippedBits();
+
+    int treerecovery$getStrippedCount();
+
+    void treerecovery$setStrippedIndex(int fingerprint, @Nullable long[] bits);
+
+    void treerecovery$setStripped(int index, boolean stripped);
+
+    static int index(int x, int y, int z) {
+        return SectionBits.index(x, y, z);
+    }
+}
@@ -0,0 +1,142 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.ToolDecisionTable;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.item.Item;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Decision table of which tool may restore which block and at what durability cost, compiled from
+ * the tools of each {@link Transform} and the {@code rules} of the config.
+ * <p>
+ * Block states map to rows and items to columns through arrays indexed by raw id, so a decision is
+ * two array reads and one table read however many rules there are. Rules apply in order, so a later
+ * rule overrides an earlier one for the cells both match.
+ */
+final class ToolRules {
+
+    static final int DENY = ToolDecisionTable.DENY;
+    private static final int DEFAULT_COST = 1;
+
+    private final ToolDecisionTable table;
+
+    ToolRules(ToolDecisionTable table) {
+        this.table = table;
+    }
+
+    boolean isTool(Item item) {
+        return table.hasTool(Registries.ITEM.getRawId(item));
+    }
+
+    /**
+     * Returns the durability {@code item} loses restoring {@code state}, or {@link #DENY}.
+     */
+    int getCost(BlockState state, Item item) {
+        return table.getCost(Block.getRawIdFromState(state), Registries.ITEM.getRawId(item));
+    }
+
+    static ToolDecisionTable compile(List<Transform> transforms, List<Config.ToolRule> rules) {
+        Map<Block, Transform> bySource = new LinkedHashMap<>();
+        for (Transform transform : transforms) {
+            bySource.put(transform.source(), transform);
+        }
+        List<Block> rowBlocks = new ArrayList<>(bySource.keySet());
+        Reference2IntOpenHashMap<Block> rowByBlock = new Reference2IntOpenHashMap<>(rowBlocks.size());
+        rowByBlock.defaultReturnValue(-1);
+        for (int row = 0; row < rowBlocks.size(); row++) {
+            rowByBlock.put(rowBlocks.get(row), row);
+        }
+        Set<Item> toolSet = new LinkedHashSet<>();
+        bySource.values().forEach(transform -> toolSet.addAll(transform.tools()));
+        if (rules != null) {
+            for (Config.ToolRule rule : rules) {
+                if (rule.tools != null) {
+                    for (String id : rule.tools) {
+                        if (!"*".equals(id)) {
+                            Registries.ITEM.getOrEmpty(new Identifier(id)).ifPresent(toolSet::add);
+                        }
+                    }
+                }
+            }
+        }
+        List<Item> tools = new ArrayList<>(toolSet);
+
+        int columns = tools.size();
+        ToolDecisionTable.Builder builder = ToolDecisionTable.builder(Block.STATE_IDS.size(), Registries.ITEM.size(),
+                rowBlocks.size(), columns);
+        for (BlockState state : Block.STATE_IDS) {
+            int row = rowByBlock.getInt(state.getBlock());
+            if (row >= 0) {
+                builder.row(Block.getRawIdFromState(state), row);
+            }
+        }
+        for (int column = 0; column < columns; column++) {
+            builder.column(Registries.ITEM.getRawId(tools.get(column)), column);
+        }
+
+        for (int row = 0; row < rowBlocks.size(); row++) {
+            Transform transform = bySource.get(rowBlocks.get(row));
+            for (int column = 0; column < columns; column++) {
+                if (transform.tools().contains(tools.get(column))) {
+                    builder.set(row, column, Math.max(0, transform.cost()));
+                }
+            }
+        }
+        if (rules != null) {
+            for (Config.ToolRule rule : rules) {
+                boolean[] matchedRows = match(rule.blocks, rowBlocks, id -> Registries.BLOCK.getOrEmpty(id).orElse(null));
+                boolean[] matchedColumns = match(rule.tools, tools, id -> Registries.ITEM.getOrEmpty(id).orElse(null));
+                for (int row = 0; row < rowBlocks.size(); row++) {
+                    for (int column = 0; column < columns; column++) {
+                        if (matchedRows[row] && matchedColumns[column]) {
+                            builder.set(row, column, apply(rule, builder.get(row, column)));
+                        }
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static int apply(Config.ToolRule rule, int cell) {
+        if (rule.allow != null) {
+            if (!rule.allow) {
+                return DENY;
+            }
+            if (cell == DENY) {
+                cell = DEFAULT_COST;
+            }
+        }
+        if (rule.durability != null && cell != DENY) {
+            cell = Math.max(0, rule.durability);
+        }
+        return cell;
+    }
+
+    private static <T> boolean[] match(List<String> ids, List<T> entries, Function<Identifier, T> lookup) {
+        boolean[] matched = new boolean[entries.size()];
+        if (ids == null || ids.contains("*")) {
+            Arrays.fill(matched, true);
+            return matched;
+        }
+        for (String id : ids) {
+            int index = entries.indexOf(lookup.apply(new Identifier(id)));
+            if (index >= 0) {
+                matched[index] = true;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,14 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+
+import java.util.Set;
+
+/**
+ * Undoes one tool action: turns {@code source} back into {@code target} when used with one of
+ * {@code tools}, costing {@code cost} durability. {@code bark} marks the stripped log and wood
+ * transforms that player tracking, regrowth and bulk restoration work on.
+ */
+record Transform(Block source, Block target, Set<Item> tools, int cost, boolean bark) {
+}
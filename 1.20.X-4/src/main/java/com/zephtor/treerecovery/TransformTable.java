@@ -0,0 +1,74 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.StateTransformTable;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.state.property.Property;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every {@link Transform} compiled into a {@link StateTransformTable} over block state raw ids. The
+ * target state of every source state is worked out up front, so applying a transform is a single
+ * array read no matter how many transforms are configured.
+ */
+@SuppressWarnings("unchecked")
+final class TransformTable {
+
+    private final Transform[] transforms;
+    private final StateTransformTable table;
+
+    TransformTable(List<Transform> transformList, StateTransformTable table) {
+        this.transforms = transformList.toArray(new Transform[0]);
+        this.table = table;
+    }
+
+    /**
+     * Works out the target state of every source state. This walks the whole block state registry,
+     * which is why {@link RecoveryTable} caches the result.
+     */
+    static StateTransformTable compile(List<Transform> transformList) {
+        Map<Block, Integer> bySource = new HashMap<>();
+        for (int i = 0; i < transformList.size(); i++) {
+            bySource.put(transformList.get(i).source(), i);
+        }
+        StateTransformTable.Builder builder = StateTransformTable.builder(Block.STATE_IDS.size());
+        for (BlockState state : Block.STATE_IDS) {
+            Integer index = bySource.get(state.getBlock());
+            if (index != null) {
+                BlockState target = copySharedProperties(state, transformList.get(index).target().getDefaultState());
+                builder.put(Block.getRawIdFromState(state), Block.getRawIdFromState(target), index);
+            }
+        }
+        return builder.build();
+    }
+
+    @Nullable
+    Transform get(BlockState state) {
+        int index = table.getTransform(Block.getRawIdFromState(state));
+        return index == StateTransformTable.NONE ? null : transforms[index];
+    }
+
+    @Nullable
+    BlockState getTarget(BlockState state) {
+        int target = table.getTarget(Block.getRawIdFromState(state));
+        return target == StateTransformTable.NONE ? null : Block.getStateFromRawId(target);
+    }
+
+    private static BlockState copySharedProperties(BlockState fromState, BlockState toState) {
+        BlockState newState = toState;
+        for (Property<?> property : fromState.getProperties()) {
+            if (newState.contains(property)) {
+                newState = with(newState, property, fromState.get(property));
+            }
+        }
+        return newState;
+    }
+
+    private static <T extends Comparable<T>, V extends T> BlockState with(BlockState state, Property<T> property, Comparable<?> value) {
+        return state.with(property, (V) value);
+    }
+}
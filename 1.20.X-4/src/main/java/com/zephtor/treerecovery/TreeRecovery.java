@@ -1,55 +1,124 @@
 package com.zephtor.treerecovery;
 
 import com.google.gson.Gson;
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.zephtor.treerecovery.core.TableCache;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
-import net.minecraft.block.Blocks;
+import net.minecraft.block.dispenser.DispenserBehavior;
+import net.minecraft.command.argument.BlockPosArgumentType;
 import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.item.AxeItem;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.item.Items;
+import net.minecraft.item.ItemUsageContext;
+import net.minecraft.nbt.NbtCompound;
 import net.minecraft.registry.Registries;
+import net.minecraft.resource.ResourceType;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
-import net.minecraft.state.property.Property;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
 import net.minecraft.util.ActionResult;
 import net.minecraft.util.Hand;
 import net.minecraft.util.hit.BlockHitResult;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.dimension.DimensionType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 @SuppressWarnings({"unused", "unchecked", "MismatchedQueryAndUpdateOfCollection", "ResultOfMethodCallIgnored"})
 public class TreeRecovery implements DedicatedServerModInitializer {
 
     private static final Logger LOGGER = LogManager.getLogger();
-    private final Set<Item> axes = new HashSet<>();
-    private final Set<Block> strippedLogs = new HashSet<>();
-    private final Set<Block> strippedWoods = new HashSet<>();
+    private static final long PLAN_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static TreeRecovery instance;
+    private volatile RecoveryTable table = RecoveryTable.DEFAULT;
+    @Nullable
+    private volatile Config config;
+    private final AtomicInteger tableGeneration = new AtomicInteger();
+    private final DataPackMappings dataPackMappings = new DataPackMappings();
+    @Nullable
+    private volatile TableCache tableCache;
+    private volatile RestoreJournal journal;
+    private volatile AuditLog auditLog;
+    private final RestoreScheduler scheduler = new RestoreScheduler(() -> table, this::onBlockWritten);
+    /**
+     * Filled from the dispenser code of every world, which may tick in parallel.
+     */
+    private final Map<DispenserBehavior, DispenserBehavior> dispenserBehaviors = new ConcurrentHashMap<>();
+    private final Map<String, PendingPlan> pendingPlans = new ConcurrentHashMap<>();
 
     @Override
     public void onInitializeServer() {
         LOGGER.info("TreeRecovery Mod initializing");
+        instance = this;
         ServerLifecycleEvents.SERVER_STARTING.register(this::generateConfig);
         ServerLifecycleEvents.SERVER_STARTING.register(this::loadConfig);
+        ServerLifecycleEvents.SERVER_STARTING.register(this::openLogs);
+        ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> onDataPackReload(success));
+        ResourceManagerHelper.get(ResourceType.SERVER_DATA).registerReloadListener(dataPackMappings);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> scheduler.cancelAll());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> closeLogs());
+        ServerTickEvents.START_SERVER_TICK.register(server -> {
+            scheduler.governor.onTickStart(System.nanoTime());
+            scheduler.startTick();
+        });
+        ServerTickEvents.END_SERVER_TICK.register(server -> scheduler.governor.onTickEnd(System.nanoTime(), table.getTargetTickNanos()));
+        ServerTickEvents.END_WORLD_TICK.register(scheduler::tick);
+        ServerWorldEvents.UNLOAD.register((server, world) -> scheduler.unload(world));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> TreeRecoveryApi.invalidateProtection(handler.getPlayer().getUuid()));
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> scheduler.get(world).regrowth.onChunkLoaded(chunk.getPos()));
+        TreeRecoveryApi.scheduler = scheduler;
         registerCommands();
         registerEvents();
     }
@@ -69,23 +138,14 @@ public class TreeRecovery implements DedicatedServerModInitializer {
 
     private void loadConfig(MinecraftServer server) {
         LOGGER.info("Loading configuration...");
+        RecoveryTable.updateRegistryHash();
+        tableCache = new TableCache(server.getRunDirectory().toPath().resolve("TreeRecovery/cache"));
         File configFile = new File(server.getRunDirectory(), "TreeRecovery/config.yml");
         if (configFile.exists()) {
             try {
                 Gson gson = new Gson();
-                Config config = gson.fromJson(Files.newBufferedReader(configFile.toPath()), Config.class);
-                axes.clear();
-                for (String id : config.axes) {
-                    axes.add(Registries.ITEM.get(new Identifier(id)));
-                }
-                strippedLogs.clear();
-                for (String id : config.strippedLogs) {
-                    strippedLogs.add(Registries.BLOCK.get(new Identifier(id)));
-                }
-                strippedWoods.clear();
-                for (String id : config.strippedWoods) {
-                    strippedWoods.add(Registries.BLOCK.get(new Identifier(id)));
-                }
+                config = gson.fromJson(Files.newBufferedReader(configFile.toPath()), Config.class);
+                publishTable(tableGeneration.incrementAndGet(), compileTable(config, dataPackMappings.get(), tableCache));
             } catch (IOException e) {
                 LOGGER.error("Failed to load config", e);
             }
@@ -95,18 +155,117 @@ public class TreeRecovery implements DedicatedServerModInitializer {
         }
     }
 
+    /**
+     * Recompiles the table against the data packs that just finished reloading. Compiling runs on a
+     * worker thread; the server keeps using the previous table until the new one is published.
+     */
+    private void onDataPackReload(boolean success) {
+        if (!success) {
+            return;
+        }
+        int generation = tableGeneration.incrementAndGet();
+        Config current = config;
+        DataPackMappings.Mappings mappings = dataPackMappings.get();
+        TableCache cache = tableCache;
+        CompletableFuture.supplyAsync(() -> compileTable(current, mappings, cache), Util.getMainWorkerExecutor())
+                .whenComplete((compiled, error) -> {
+                    if (error != null) {
+                        LOGGER.error("Failed to compile TreeRecovery data pack mappings", error);
+                    } else {
+                        publishTable(generation, compiled);
+                    }
+                });
+    }
+
+    /**
+     * Publishes {@code compiled} unless a newer compile has started since, so a slow data pack
+     * compile never replaces a table from a later config reload.
+     */
+    private synchronized void publishTable(int generation, RecoveryTable compiled) {
+        if (generation == tableGeneration.get()) {
+            table = compiled;
+        }
+    }
+
+    private static RecoveryTable compileTable(@Nullable Config config, DataPackMappings.Mappings mappings, @Nullable TableCache cache) {
+        if (config == null) {
+            return RecoveryTable.defaults(mappings, cache);
+        }
+        Set<Item> axes = new HashSet<>();
+        for (String id : config.axes) {
+            axes.add(Registries.ITEM.get(new Identifier(id)));
+        }
+        Set<Block> strippedLogs = new HashSet<>();
+        for (String id : config.strippedLogs) {
+            strippedLogs.add(Registries.BLOCK.get(new Identifier(id)));
+        }
+        Set<Block> strippedWoods = new HashSet<>();
+        for (String id : config.strippedWoods) {
+            strippedWoods.add(Registries.BLOCK.get(new Identifier(id)));
+        }
+        Map<Block, Float> randomRegrowthChances = new HashMap<>();
+        if (config.randomRegrowthChances != null) {
+            config.randomRegrowthChances.forEach((id, chance) -> {
+                Block block = Registries.BLOCK.get(new Identifier(id));
+                if (chance > 0.0F && (strippedLogs.contains(block) || strippedWoods.contains(block))) {
+                    randomRegrowthChances.put(block, Math.min(chance, 1.0F));
+                }
+            });
+        }
+        return new RecoveryTable(axes, strippedLogs, strippedWoods, randomRegrowthChances, config, mappings, cache);
+    }
+
+    private void openLogs(MinecraftServer server) {
+        Path directory = server.getRunDirectory().toPath().resolve("TreeRecovery");
+        if (table.isJournalEnabled()) {
+            try {
+                journal = new RestoreJournal(directory.resolve("journal"), table.getJournalSegmentBytes(), RecoveryTable.getRegistryHash());
+            } catch (IOException e) {
+                LOGGER.error("Failed to open restoration journal, undo is unavailable", e);
+            }
+        }
+        if (table.isAuditLogEnabled()) {
+            try {
+                auditLog = new AuditLog(directory.resolve("audit"), table.getAuditBufferSize());
+            } catch (IOException e) {
+                LOGGER.error("Failed to open audit log, lookup is unavailable", e);
+            }
+        }
+    }
+
+    private void closeLogs() {
+        RestoreJournal currentJournal = journal;
+        journal = null;
+        if (currentJournal != null) {
+            currentJournal.close();
+        }
+        AuditLog currentAuditLog = auditLog;
+        auditLog = null;
+        if (currentAuditLog != null) {
+            currentAuditLog.close();
+        }
+    }
+
+    private void onBlockWritten(ServerWorld world, long pos, BlockState oldState, BlockState newState, @Nullable UUID actor, boolean undo) {
+        WorldChunk chunk = world.getChunkManager().getWorldChunk(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(pos)),
+                ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(pos)));
+        // Offline edits have no loaded chunk and already cleared the mark in the saved data.
+        if (chunk != null && !table.isRestorable(newState)) {
+            PlayerStrippedChunk.setPlayerStripped(chunk, BlockPos.fromLong(pos), false);
+        }
+        RestoreJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.onWrite(world, pos, oldState, newState, actor, undo);
+        }
+        AuditLog currentAuditLog = auditLog;
+        if (currentAuditLog != null) {
+            currentAuditLog.onWrite(world, pos, oldState, newState, actor, undo);
+        }
+    }
+
     private void setDefaultConfig() {
-        axes.addAll(List.of(
-                Items.WOODEN_AXE, Items.STONE_AXE, Items.IRON_AXE, Items.GOLDEN_AXE, Items.DIAMOND_AXE
-        ));
-        strippedLogs.addAll(List.of(
-                Blocks.STRIPPED_OAK_LOG, Blocks.STRIPPED_SPRUCE_LOG, Blocks.STRIPPED_BIRCH_LOG,
-                Blocks.STRIPPED_JUNGLE_LOG, Blocks.STRIPPED_ACACIA_LOG, Blocks.STRIPPED_DARK_OAK_LOG
-        ));
-        strippedWoods.addAll(List.of(
-                Blocks.STRIPPED_OAK_WOOD, Blocks.STRIPPED_SPRUCE_WOOD, Blocks.STRIPPED_BIRCH_WOOD,
-                Blocks.STRIPPED_JUNGLE_WOOD, Blocks.STRIPPED_ACACIA_WOOD, Blocks.STRIPPED_DARK_OAK_WOOD
-        ));
+        config = null;
+        publishTable(tableGeneration.incrementAndGet(), RecoveryTable.defaults(dataPackMappings.get(), tableCache));
     }
 
     private void registerCommands() {
@@ -115,6 +274,53 @@ public class TreeRecovery implements DedicatedServerModInitializer {
                         .executes(this::reloadConfig))
                 .then(CommandManager.literal("version")
                         .executes(this::showVersion))
+                .then(CommandManager.literal("undo")
+                        .then(CommandManager.literal("since")
+                                .then(CommandManager.argument("minutes", IntegerArgumentType.integer(1))
+                                        .executes(context -> undo(context, null))))
+                        .then(CommandManager.literal("actor")
+                                .then(CommandManager.argument("player", StringArgumentType.word())
+                                        .then(CommandManager.argument("minutes", IntegerArgumentType.integer(1))
+                                                .executes(context -> undo(context, StringArgumentType.getString(context, "player")))))))
+                .then(CommandManager.literal("lookup")
+                        .then(CommandManager.argument("pos", BlockPosArgumentType.blockPos())
+                                .executes(context -> lookup(context, BlockPosArgumentType.getBlockPos(context, "pos"), 0)))
+                        .then(CommandManager.literal("radius")
+                                .then(CommandManager.argument("radius", IntegerArgumentType.integer(1, 256))
+                                        .executes(context -> lookup(context, BlockPos.ofFloored(context.getSource().getPosition()),
+                                                IntegerArgumentType.getInteger(context, "radius"))))))
+                .then(CommandManager.literal("near")
+                        .then(CommandManager.argument("radius", IntegerArgumentType.integer(1, 256))
+                                .executes(context -> near(context, IntegerArgumentType.getInteger(context, "radius")))))
+                .then(CommandManager.literal("plan")
+                        .then(CommandManager.literal("confirm")
+                                .executes(this::confirmPlan))
+                        .then(CommandManager.literal("abort")
+                                .executes(this::abortPlan))
+                        .then(CommandManager.argument("from", BlockPosArgumentType.blockPos())
+                                .then(CommandManager.argument("to", BlockPosArgumentType.blockPos())
+                                        .executes(context -> plan(context, BlockPosArgumentType.getBlockPos(context, "from"),
+                                                BlockPosArgumentType.getBlockPos(context, "to"))))))
+                .then(CommandManager.literal("restore-from-backup")
+                        .then(CommandManager.argument("path", StringArgumentType.string())
+                                .then(CommandManager.argument("from", BlockPosArgumentType.blockPos())
+                                        .then(CommandManager.argument("to", BlockPosArgumentType.blockPos())
+                                                .executes(context -> restoreFromBackup(context, StringArgumentType.getString(context, "path"),
+                                                        BlockPosArgumentType.getBlockPos(context, "from"), BlockPosArgumentType.getBlockPos(context, "to")))))))
+                .then(CommandManager.literal("jobs")
+                        .then(CommandManager.literal("list")
+                                .executes(this::listJobs))
+                        .then(CommandManager.literal("pause")
+                                .then(CommandManager.argument("id", IntegerArgumentType.integer(1))
+                                        .executes(context -> pauseJob(context, IntegerArgumentType.getInteger(context, "id")))))
+                        .then(CommandManager.literal("cancel")
+                                .then(CommandManager.argument("id", IntegerArgumentType.integer(1))
+                                        .executes(context -> cancelJob(context, IntegerArgumentType.getInteger(context, "id")))))
+                        .then(CommandManager.literal("priority")
+                                .then(CommandManager.argument("id", IntegerArgumentType.integer(1))
+                                        .then(CommandManager.argument("priority", IntegerArgumentType.integer(JobManager.MIN_PRIORITY, JobManager.MAX_PRIORITY))
+                                                .executes(context -> setJobPriority(context, IntegerArgumentType.getInteger(context, "id"),
+                                                        IntegerArgumentType.getInteger(context, "priority")))))))
         ));
     }
 
@@ -135,114 +341,563 @@ public class TreeRecovery implements DedicatedServerModInitializer {
         return 1;
     }
 
-    private void registerEvents() {
-        UseBlockCallback.EVENT.register((player, world, hand, hitResult) -> {
-            if (hand == Hand.MAIN_HAND && hitResult instanceof BlockHitResult) {
-                BlockPos blockPos = hitResult.getBlockPos();
-                BlockState blockState = world.getBlockState(blockPos);
-                if (isStrippedLog(blockState) || isStrippedWood(blockState)) {
-                    ItemStack itemStack = player.getStackInHand(hand);
-                    if (isAxe(itemStack.getItem()) && isAllowedAxe(itemStack.getItem())) {
-                        BlockState newBlockState = getNormalType(blockState);
-                        BlockState updatedBlockState = copyBlockStateProperties(blockState, newBlockState);
-                        world.setBlockState(blockPos, updatedBlockState);
-                        damageItem(player, itemStack);
-                        return ActionResult.SUCCESS;
+    private int undo(CommandContext<ServerCommandSource> context, @Nullable String actorName) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(4)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        RestoreJournal current = journal;
+        if (current == null) {
+            source.sendError(Text.of("The restoration journal is disabled."));
+            return 0;
+        }
+        MinecraftServer server = source.getServer();
+        UUID actorFilter = null;
+        if (actorName != null) {
+            Optional<GameProfile> profile = server.getUserCache().findByName(actorName);
+            if (profile.isEmpty()) {
+                source.sendError(Text.of("Unknown player: " + actorName));
+                return 0;
+            }
+            actorFilter = profile.get().getId();
+        }
+        Map<Identifier, ServerWorld> worlds = new HashMap<>();
+        for (ServerWorld world : server.getWorlds()) {
+            worlds.put(world.getRegistryKey().getValue(), world);
+        }
+        UUID undoActor = source.getPlayer() != null ? source.getPlayer().getUuid() : null;
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(IntegerArgumentType.getInteger(context, "minutes"));
+        UUID filter = actorFilter;
+        source.sendFeedback(() -> Text.of("Undoing TreeRecovery restorations..."), true);
+        CompletableFuture.runAsync(() -> {
+            Map<Identifier, UndoJob> jobs = new HashMap<>();
+            try {
+                current.readBackwards((worldId, pos, oldState, newState, actor, tick, time) -> {
+                    if (time < cutoff) {
+                        return false;
+                    }
+                    ServerWorld world = worldId == null ? null : worlds.get(worldId);
+                    if (world == null || (filter != null && !filter.equals(actor))) {
+                        return true;
+                    }
+                    UndoJob job = jobs.computeIfAbsent(worldId, id -> {
+                        UndoJob created = new UndoJob(world, undoActor);
+                        scheduler.submit(created);
+                        return created;
+                    });
+                    try {
+                        return job.offer(pos, newState, oldState);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.error("Failed to read restoration journal", e);
+            } finally {
+                jobs.values().forEach(UndoJob::finishFeeding);
+            }
+            CompletableFuture.allOf(jobs.values().stream().map(job -> job.future).toArray(CompletableFuture[]::new))
+                    .whenComplete((ignored, error) -> {
+                        int reverted = jobs.values().stream().filter(job -> !job.future.isCompletedExceptionally())
+                                .mapToInt(job -> job.future.join().getRestored()).sum();
+                        server.execute(() -> source.sendFeedback(() -> Text.of("Reverted " + reverted + " TreeRecovery restorations."), true));
+                    });
+        }, Util.getIoWorkerExecutor());
+        return 1;
+    }
+
+    private int lookup(CommandContext<ServerCommandSource> context, BlockPos center, int radius) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        AuditLog current = auditLog;
+        if (current == null) {
+            source.sendError(Text.of("The audit log is disabled."));
+            return 0;
+        }
+        MinecraftServer server = source.getServer();
+        Identifier world = source.getWorld().getRegistryKey().getValue();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return current.lookup(world, center, radius, 10);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Util.getIoWorkerExecutor()).whenComplete((entries, error) -> server.execute(() -> {
+            if (error != null) {
+                LOGGER.error("Failed to read audit log", error);
+                source.sendError(Text.of("Failed to read the audit log."));
+                return;
+            }
+            if (entries.isEmpty()) {
+                source.sendFeedback(() -> Text.of("No TreeRecovery restorations found."), false);
+                return;
+            }
+            for (AuditLog.Entry entry : entries) {
+                String actor = entry.actor() == null ? "(automatic)" : server.getUserCache().getByUuid(entry.actor())
+                        .map(GameProfile::getName).orElse(entry.actor().toString());
+                String block = Registries.BLOCK.getId(Block.getStateFromRawId(entry.newState()).getBlock()).toString();
+                String line = Instant.ofEpochMilli(entry.time()) + " " + actor + " restored " + block
+                        + " at " + entry.pos().getX() + " " + entry.pos().getY() + " " + entry.pos().getZ();
+                source.sendFeedback(() -> Text.of(line), false);
+            }
+        }));
+        return 1;
+    }
+
+    private int near(CommandContext<ServerCommandSource> context, int radius) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        RecoveryTable table = this.table;
+        ServerWorld world = source.getWorld();
+        BlockPos center = BlockPos.ofFloored(source.getPosition());
+        long radiusSquared = (long) radius * radius;
+        PriorityQueue<BlockPos> nearest = new PriorityQueue<>(Comparator.comparingDouble((BlockPos pos) -> pos.getSquaredDistance(center)).reversed());
+        int minSectionY = ChunkSectionPos.getSectionCoord(Math.max(center.getY() - radius, world.getBottomY()));
+        int maxSectionY = ChunkSectionPos.getSectionCoord(Math.min(center.getY() + radius, world.getTopY() - 1));
+        int found = 0;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (int chunkX = ChunkSectionPos.getSectionCoord(center.getX() - radius); chunkX <= ChunkSectionPos.getSectionCoord(center.getX() + radius); chunkX++) {
+            for (int chunkZ = ChunkSectionPos.getSectionCoord(center.getZ() - radius); chunkZ <= ChunkSectionPos.getSectionCoord(center.getZ() + radius); chunkZ++) {
+                WorldChunk chunk = world.getChunkManager().getWorldChunk(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                    long[] bits = StrippedIndex.bits(chunk.getSection(world.sectionCoordToIndex(sectionY)), table);
+                    if (bits == null) {
+                        continue;
+                    }
+                    for (int index = StrippedIndex.next(bits, 0); index >= 0; index = StrippedIndex.next(bits, index + 1)) {
+                        pos.set(ChunkSectionPos.getBlockCoord(chunkX) + (index & 15), ChunkSectionPos.getBlockCoord(sectionY) + (index >> 8),
+                                ChunkSectionPos.getBlockCoord(chunkZ) + (index >> 4 & 15));
+                        if (pos.getSquaredDistance(center) > radiusSquared) {
+                            continue;
+                        }
+                        found++;
+                        nearest.add(pos.toImmutable());
+                        if (nearest.size() > 10) {
+                            nearest.poll();
+                        }
                     }
                 }
             }
-            return ActionResult.PASS;
-        });
+        }
+        int total = found;
+        source.sendFeedback(() -> Text.of("Found " + total + " stripped blocks within " + radius + " blocks."), false);
+        List<BlockPos> sorted = new ArrayList<>(nearest);
+        sorted.sort(Comparator.comparingDouble(blockPos -> blockPos.getSquaredDistance(center)));
+        for (BlockPos blockPos : sorted) {
+            String block = Registries.BLOCK.getId(world.getBlockState(blockPos).getBlock()).toString();
+            source.sendFeedback(() -> Text.of(block + " at " + blockPos.getX() + " " + blockPos.getY() + " " + blockPos.getZ()), false);
+        }
+        return total;
     }
 
-    private <T extends Comparable<T>> BlockState copyBlockStateProperties(BlockState fromState, BlockState toState) {
-        BlockState newState = toState;
-        for (Property<?> property : fromState.getProperties()) {
-            newState = with(newState, property, fromState.get(property));
+    private int plan(CommandContext<ServerCommandSource> context, BlockPos from, BlockPos to) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        BlockBox box = BlockBox.create(from, to);
+        if (RestorePlanner.countChunks(box) > RestorePlanner.MAX_CHUNKS) {
+            source.sendError(Text.of("Plans are limited to " + RestorePlanner.MAX_CHUNKS + " chunks."));
+            return 0;
         }
-        return newState;
+        ServerWorld world = source.getWorld();
+        RecoveryTable table = this.table;
+        MinecraftServer server = source.getServer();
+        source.sendFeedback(() -> Text.of("Planning TreeRecovery restore..."), false);
+        RestorePlanner.plan(world, box, table, scheduler.get(world).executor).whenComplete((plan, error) -> server.execute(() -> {
+            if (error != null) {
+                LOGGER.error("Failed to plan TreeRecovery restore", error);
+                source.sendError(Text.of("Failed to plan the restore, see the server log."));
+                return;
+            }
+            pendingPlans.put(source.getName(), new PendingPlan(world, plan, System.currentTimeMillis()));
+            sendPlan(source, table, plan);
+        }));
+        return 1;
     }
 
-    private <T extends Comparable<T>, V extends T> BlockState with(BlockState state, Property<T> property, Comparable<?> value) {
-        return state.with(property, (V) value);
+    private void sendPlan(ServerCommandSource source, RecoveryTable table, RestorePlanner.Plan plan) {
+        source.sendFeedback(() -> Text.of(plan.blocks() + " blocks to restore in " + plan.chunks() + " chunks"
+                + (plan.unloadedChunks() > 0 ? ", " + plan.unloadedChunks() + " unloaded chunks will be "
+                + (table.isOfflineEditEnabled() ? "edited on disk and are not counted." : "skipped.") : ".")), false);
+        plan.bySpecies().reference2IntEntrySet().stream()
+                .sorted(Comparator.comparingInt(Reference2IntMap.Entry<Block>::getIntValue).reversed())
+                .forEach(entry -> source.sendFeedback(() -> Text.of("  " + Registries.BLOCK.getId(entry.getKey()) + ": " + entry.getIntValue()), false));
+        plan.byChunk().long2IntEntrySet().stream()
+                .sorted(Comparator.comparingInt(Long2IntMap.Entry::getIntValue).reversed())
+                .limit(5)
+                .forEach(entry -> source.sendFeedback(() -> Text.of("  chunk " + ChunkPos.getPackedX(entry.getLongKey()) + " "
+                        + ChunkPos.getPackedZ(entry.getLongKey()) + ": " + entry.getIntValue()), false));
+        int perTick = Math.max(1, (int) (scheduler.governor.scale(table.getBlocksPerTick()) * scheduler.jobs.share(RestoreJob.DEFAULT_PRIORITY)));
+        long ticks = (plan.cost() + perTick - 1) / perTick;
+        double seconds = ticks * Math.max(50.0, scheduler.governor.getAverageMillis()) / 1000.0;
+        source.sendFeedback(() -> Text.of(String.format("Estimated %d ticks (about %.1f s) at %d blocks per tick. "
+                + "Run /treerecovery plan confirm to start it or /treerecovery plan abort.", ticks, seconds, perTick)), false);
     }
 
-    private void damageItem(PlayerEntity player, ItemStack itemStack) {
-        itemStack.damage(1, player, (p) -> p.sendToolBreakStatus(player.getActiveHand()));
-        if (itemStack.getDamage() >= itemStack.getMaxDamage()) {
-            itemStack.decrement(1);
+    private int confirmPlan(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        PendingPlan pending = pendingPlans.remove(source.getName());
+        if (pending == null || System.currentTimeMillis() - pending.createdAt() > PLAN_EXPIRY_MILLIS) {
+            source.sendError(Text.of("There is no TreeRecovery plan to confirm."));
+            return 0;
+        }
+        BoxRestoreJob job = new BoxRestoreJob(pending.world(), pending.plan().box());
+        scheduler.submit(job);
+        MinecraftServer server = source.getServer();
+        job.future.whenComplete((result, error) -> server.execute(() -> {
+            if (result != null) {
+                source.sendFeedback(() -> Text.of("TreeRecovery job #" + job.id + " restored " + result.getRestored() + " blocks."), true);
+            } else if (error != null && !job.future.isCancelled()) {
+                source.sendError(Text.of("TreeRecovery job #" + job.id + " failed: " + error.getMessage()));
+            }
+        }));
+        source.sendFeedback(() -> Text.of("Started TreeRecovery job #" + job.id + "."), true);
+        return 1;
+    }
+
+    private int abortPlan(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        if (pendingPlans.remove(source.getName()) == null) {
+            source.sendError(Text.of("There is no TreeRecovery plan to abort."));
+            return 0;
+        }
+        source.sendFeedback(() -> Text.of("TreeRecovery plan discarded."), false);
+        return 1;
+    }
+
+    private int restoreFromBackup(CommandContext<ServerCommandSource> context, String path, BlockPos from, BlockPos to) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(4)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        BlockBox box = BlockBox.create(from, to);
+        if (RestorePlanner.countChunks(box) > RestorePlanner.MAX_CHUNKS) {
+            source.sendError(Text.of("Backup restores are limited to " + RestorePlanner.MAX_CHUNKS + " chunks."));
+            return 0;
+        }
+        MinecraftServer server = source.getServer();
+        ServerWorld world = source.getWorld();
+        Path regionDirectory = DimensionType.getSaveDirectory(world.getRegistryKey(), server.getRunDirectory().toPath().resolve(path))
+                .resolve("region");
+        if (!Files.isDirectory(regionDirectory)) {
+            source.sendError(Text.of("No region files found at " + regionDirectory + "."));
+            return 0;
+        }
+        RecoveryTable table = this.table;
+        UUID actor = source.getPlayer() != null ? source.getPlayer().getUuid() : null;
+        // Live sections are copied here; only the copies and the backup are read off-thread.
+        RestorePlanner.Snapshots live = RestorePlanner.snapshot(world, box, table);
+        source.sendFeedback(() -> Text.of("Comparing " + live.sections().size() + " sections with the backup..."), false);
+        CompletableFuture.supplyAsync(() -> {
+            try (BackupReader reader = new BackupReader(regionDirectory)) {
+                return reader.diff(box, table, live);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, scheduler.get(world).executor).whenComplete((diff, error) -> server.execute(() -> {
+            if (error != null) {
+                LOGGER.error("Failed to read TreeRecovery backup {}", regionDirectory, error);
+                source.sendError(Text.of("Failed to read the backup, see the server log."));
+                return;
+            }
+            source.sendFeedback(() -> Text.of(diff.positions().length + " blocks differ from the backup"
+                    + (live.unloadedChunks() > 0 ? ", " + live.unloadedChunks() + " unloaded chunks skipped" : "")
+                    + (diff.missingChunks() > 0 ? ", " + diff.missingChunks() + " chunks missing from the backup" : "")
+                    + (diff.outdatedChunks() > 0 ? ", " + diff.outdatedChunks() + " chunks saved by another game version" : "") + "."), false);
+            if (diff.positions().length == 0) {
+                return;
+            }
+            BackupRestoreJob job = new BackupRestoreJob(world, diff, actor);
+            scheduler.submit(job);
+            job.future.whenComplete((result, jobError) -> server.execute(() -> {
+                if (result != null) {
+                    source.sendFeedback(() -> Text.of("TreeRecovery job #" + job.id + " restored " + result.getRestored() + " blocks from the backup."), true);
+                } else if (jobError != null && !job.future.isCancelled()) {
+                    source.sendError(Text.of("TreeRecovery job #" + job.id + " failed: " + jobError.getMessage()));
+                }
+            }));
+            source.sendFeedback(() -> Text.of("Started TreeRecovery job #" + job.id + "."), true);
+        }));
+        return 1;
+    }
+
+    private int listJobs(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return 0;
+        }
+        int count = 0;
+        for (RestoreJob job : scheduler.jobs.list()) {
+            String line = "#" + job.id + " " + job.world.getRegistryKey().getValue() + " " + job.describe()
+                    + ", priority " + job.priority + ", " + job.getRestoredCount() + " restored" + (job.paused ? " (paused)" : "");
+            source.sendFeedback(() -> Text.of(line), false);
+            count++;
+        }
+        if (count == 0) {
+            source.sendFeedback(() -> Text.of("No TreeRecovery jobs are running."), false);
+        }
+        return count;
+    }
+
+    @Nullable
+    private RestoreJob findJob(ServerCommandSource source, int id) {
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.of("You do not have permission to use this command."));
+            return null;
+        }
+        RestoreJob job = scheduler.jobs.get(id);
+        if (job == null) {
+            source.sendError(Text.of("No TreeRecovery job #" + id + "."));
+        }
+        return job;
+    }
+
+    private int pauseJob(CommandContext<ServerCommandSource> context, int id) {
+        ServerCommandSource source = context.getSource();
+        RestoreJob job = findJob(source, id);
+        if (job == null) {
+            return 0;
+        }
+        job.paused = !job.paused;
+        boolean paused = job.paused;
+        source.sendFeedback(() -> Text.of("TreeRecovery job #" + id + (paused ? " paused." : " resumed.")), true);
+        return 1;
+    }
+
+    private int cancelJob(CommandContext<ServerCommandSource> context, int id) {
+        ServerCommandSource source = context.getSource();
+        RestoreJob job = findJob(source, id);
+        if (job == null) {
+            return 0;
+        }
+        if (!job.isCancellable()) {
+            source.sendError(Text.of("TreeRecovery job #" + id + " cannot be cancelled."));
+            return 0;
+        }
+        job.future.cancel(false);
+        source.sendFeedback(() -> Text.of("TreeRecovery job #" + id + " cancelled."), true);
+        return 1;
+    }
+
+    private int setJobPriority(CommandContext<ServerCommandSource> context, int id, int priority) {
+        ServerCommandSource source = context.getSource();
+        RestoreJob job = findJob(source, id);
+        if (job == null) {
+            return 0;
+        }
+        job.priority = priority;
+        source.sendFeedback(() -> Text.of("TreeRecovery job #" + id + " now has priority " + priority + "."), true);
+        return 1;
+    }
+
+    public static void onStripped(ServerWorld world, BlockPos pos, @Nullable PlayerEntity player) {
+        TreeRecovery mod = instance;
+        if (mod == null || player == null) {
+            return;
+        }
+        RecoveryTable table = mod.table;
+        if (table.isRestorable(world.getBlockState(pos))) {
+            PlayerStrippedChunk.setPlayerStripped(world.getWorldChunk(pos), pos, true);
+            mod.scheduler.get(world).recordToggle(pos);
+            if (table.getRegrowthDelayTicks() > 0) {
+                mod.scheduler.get(world).regrowth.schedule(pos, table.getRegrowthDelayTicks());
+            }
+        }
+    }
+
+    /**
+     * Called from {@code AxeItem.useOnBlock} with the state vanilla already looked up. Returns true
+     * if the block was restored and vanilla should stop there.
+     */
+    public static boolean onAxeUse(ItemUsageContext context, BlockState blockState) {
+        TreeRecovery mod = instance;
+        if (mod == null || context.getHand() != Hand.MAIN_HAND || context.getPlayer() == null
+                || !(context.getWorld() instanceof ServerWorld world)) {
+            return false;
+        }
+        RecoveryTable table = mod.table;
+        return table.isAxeIntegration() && mod.tryRestore(table, context.getPlayer(), world, context.getBlockPos(),
+                blockState, context.getStack()) == ActionResult.SUCCESS;
+    }
+
+    /**
+     * Returns the behaviour to use instead of {@code behavior} when a dispenser fires {@code stack},
+     * or null to keep it. Wrappers are created once per wrapped behaviour.
+     */
+    @Nullable
+    public static DispenserBehavior wrapDispenserBehavior(ItemStack stack, DispenserBehavior behavior) {
+        TreeRecovery mod = instance;
+        if (mod == null || behavior == DispenserBehavior.NOOP) {
+            return null;
+        }
+        RecoveryTable table = mod.table;
+        if (!table.isDispenserEnabled() || !table.isTool(stack.getItem())) {
+            return null;
+        }
+        return mod.dispenserBehaviors.computeIfAbsent(behavior, RestoringDispenserBehavior::new);
+    }
+
+    /**
+     * Restores or queues the block at {@code pos} for a dispenser firing {@code stack}, damaging the
+     * stack for every accepted request. Returns null if the block cannot be restored with it.
+     * Dispensers have no player, so only the region policy applies, and blocks that must be player
+     * stripped need the mark like they do for players.
+     */
+    @Nullable
+    static DispenserRestorer.Result onDispense(ServerWorld world, BlockPos pos, ItemStack stack) {
+        TreeRecovery mod = instance;
+        RecoveryTable table = mod.table;
+        BlockState blockState = world.getBlockState(pos);
+        int cost = table.getToolCost(blockState, stack.getItem());
+        if (cost == ToolRules.DENY || !table.isAllowedAt(world, pos) || (table.isPlayerStrippedOnly() && table.isRestorable(blockState)
+                && !PlayerStrippedChunk.isPlayerStripped(world.getWorldChunk(pos), pos))) {
+            return null;
+        }
+        WorldRecoveryState state = mod.scheduler.get(world);
+        if (state.isToggling(table, pos)) {
+            return DispenserRestorer.Result.FULL;
+        }
+        DispenserRestorer.Result result = state.dispense(table, pos, blockState);
+        if (result == DispenserRestorer.Result.RESTORED || result == DispenserRestorer.Result.QUEUED) {
+            state.recordToggle(pos);
+            if (cost > 0 && stack.damage(cost, world.getRandom(), null)) {
+                stack.decrement(1);
+            }
+        }
+        return result;
+    }
+
+    public static void onRandomTickChunk(ServerWorld world, WorldChunk chunk, int randomTickSpeed) {
+        TreeRecovery mod = instance;
+        if (mod == null || randomTickSpeed <= 0) {
+            return;
+        }
+        RecoveryTable table = mod.table;
+        if (table.hasRandomRegrowth()) {
+            mod.scheduler.get(world).randomTick(table, chunk, randomTickSpeed);
         }
     }
 
-    private boolean isStrippedLog(BlockState blockState) {
-        return strippedLogs.contains(blockState.getBlock());
+    public static void onWorldSave(ServerWorld world) {
+        TreeRecovery mod = instance;
+        if (mod != null) {
+            mod.scheduler.save(world);
+        }
     }
 
-    private boolean isStrippedWood(BlockState blockState) {
-        return strippedWoods.contains(blockState.getBlock());
+    public static void onSectionBlockChanged(ChunkSection section, int x, int y, int z, BlockState oldState, BlockState newState) {
+        TreeRecovery mod = instance;
+        if (mod != null) {
+            StrippedIndex.onBlockChanged(section, x, y, z, oldState, newState, mod.table);
+        }
     }
 
-    private boolean isAxe(Item item) {
-        return axes.contains(item);
+    public static void readChunkData(Chunk chunk, NbtCompound nbt) {
+        TreeRecovery mod = instance;
+        if (mod != null) {
+            StrippedIndex.read(chunk, nbt, mod.table);
+        }
     }
 
-    private boolean isAllowedAxe(Item item) {
-        return isAxe(item);
+    /**
+     * Called on the thread that turned saved data into a chunk, so pending offline edits of it are
+     * handed back instead of overwriting what the loaded chunk will save.
+     */
+    public static void onChunkDeserialized(ServerWorld world, ChunkPos chunkPos) {
+        TreeRecovery mod = instance;
+        WorldRecoveryState state = mod == null ? null : mod.scheduler.peek(world);
+        if (state != null) {
+            state.offline.onChunkDeserialized(chunkPos);
+        }
     }
 
-    private BlockState getNormalType(BlockState blockState) {
-        return switch (getStrippedBlockType(blockState.getBlock())) {
-            case STRIPPED_OAK_LOG -> Blocks.OAK_LOG.getDefaultState();
-            case STRIPPED_SPRUCE_LOG -> Blocks.SPRUCE_LOG.getDefaultState();
-            case STRIPPED_BIRCH_LOG -> Blocks.BIRCH_LOG.getDefaultState();
-            case STRIPPED_JUNGLE_LOG -> Blocks.JUNGLE_LOG.getDefaultState();
-            case STRIPPED_ACACIA_LOG -> Blocks.ACACIA_LOG.getDefaultState();
-            case STRIPPED_DARK_OAK_LOG -> Blocks.DARK_OAK_LOG.getDefaultState();
-            case STRIPPED_OAK_WOOD -> Blocks.OAK_WOOD.getDefaultState();
-            case STRIPPED_SPRUCE_WOOD -> Blocks.SPRUCE_WOOD.getDefaultState();
-            case STRIPPED_BIRCH_WOOD -> Blocks.BIRCH_WOOD.getDefaultState();
-            case STRIPPED_JUNGLE_WOOD -> Blocks.JUNGLE_WOOD.getDefaultState();
-            case STRIPPED_ACACIA_WOOD -> Blocks.ACACIA_WOOD.getDefaultState();
-            case STRIPPED_DARK_OAK_WOOD -> Blocks.DARK_OAK_WOOD.getDefaultState();
-            default -> blockState;
-        };
+    public static void writeChunkData(Chunk chunk, NbtCompound nbt) {
+        TreeRecovery mod = instance;
+        if (mod == null) {
+            return;
+        }
+        StrippedIndex.write(chunk, nbt, mod.table);
+        int[] playerStripped = ((PlayerStrippedChunk) chunk).treerecovery$getPlayerStripped();
+        if (playerStripped.length == 0) {
+            return;
+        }
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int kept = 0;
+        for (int packed : playerStripped) {
+            pos.set(chunk.getPos().getStartX() + PlayerStrippedChunk.unpackX(packed), PlayerStrippedChunk.unpackY(packed),
+                    chunk.getPos().getStartZ() + PlayerStrippedChunk.unpackZ(packed));
+            if (mod.table.isRestorable(chunk.getBlockState(pos))) {
+                playerStripped[kept++] = packed;
+            }
+        }
+        if (kept > 0) {
+            nbt.putIntArray(PlayerStrippedChunk.NBT_KEY, Arrays.copyOf(playerStripped, kept));
+        }
     }
 
-    private StrippedBlockType getStrippedBlockType(Block block) {
-        if (block == Blocks.STRIPPED_OAK_LOG) return StrippedBlockType.STRIPPED_OAK_LOG;
-        if (block == Blocks.STRIPPED_SPRUCE_LOG) return StrippedBlockType.STRIPPED_SPRUCE_LOG;
-        if (block == Blocks.STRIPPED_BIRCH_LOG) return StrippedBlockType.STRIPPED_BIRCH_LOG;
-        if (block == Blocks.STRIPPED_JUNGLE_LOG) return StrippedBlockType.STRIPPED_JUNGLE_LOG;
-        if (block == Blocks.STRIPPED_ACACIA_LOG) return StrippedBlockType.STRIPPED_ACACIA_LOG;
-        if (block == Blocks.STRIPPED_DARK_OAK_LOG) return StrippedBlockType.STRIPPED_DARK_OAK_LOG;
-        if (block == Blocks.STRIPPED_OAK_WOOD) return StrippedBlockType.STRIPPED_OAK_WOOD;
-        if (block == Blocks.STRIPPED_SPRUCE_WOOD) return StrippedBlockType.STRIPPED_SPRUCE_WOOD;
-        if (block == Blocks.STRIPPED_BIRCH_WOOD) return StrippedBlockType.STRIPPED_BIRCH_WOOD;
-        if (block == Blocks.STRIPPED_JUNGLE_WOOD) return StrippedBlockType.STRIPPED_JUNGLE_WOOD;
-        if (block == Blocks.STRIPPED_ACACIA_WOOD) return StrippedBlockType.STRIPPED_ACACIA_WOOD;
-        if (block == Blocks.STRIPPED_DARK_OAK_WOOD) return StrippedBlockType.STRIPPED_DARK_OAK_WOOD;
-        return StrippedBlockType.UNKNOWN;
+    private void registerEvents() {
+        UseBlockCallback.EVENT.register((player, world, hand, hitResult) -> {
+            if (hand == Hand.MAIN_HAND && hitResult instanceof BlockHitResult && !world.isClient) {
+                RecoveryTable table = this.table;
+                ItemStack itemStack = player.getStackInHand(hand);
+                Item item = itemStack.getItem();
+                // The item is checked first, most clicks are not made with a restoring tool.
+                if (table.isTool(item) && !(table.isAxeIntegration() && item instanceof AxeItem)) {
+                    BlockPos blockPos = hitResult.getBlockPos();
+                    return tryRestore(table, player, (ServerWorld) world, blockPos, world.getBlockState(blockPos), itemStack);
+                }
+            }
+            return ActionResult.PASS;
+        });
     }
 
-    private enum StrippedBlockType {
-        STRIPPED_OAK_LOG,
-        STRIPPED_SPRUCE_LOG,
-        STRIPPED_BIRCH_LOG,
-        STRIPPED_JUNGLE_LOG,
-        STRIPPED_ACACIA_LOG,
-        STRIPPED_DARK_OAK_LOG,
-        STRIPPED_OAK_WOOD,
-        STRIPPED_SPRUCE_WOOD,
-        STRIPPED_BIRCH_WOOD,
-        STRIPPED_JUNGLE_WOOD,
-        STRIPPED_ACACIA_WOOD,
-        STRIPPED_DARK_OAK_WOOD,
-        UNKNOWN
+    private ActionResult tryRestore(RecoveryTable table, PlayerEntity player, ServerWorld world, BlockPos blockPos,
+                                    BlockState blockState, ItemStack itemStack) {
+        int cost = table.getToolCost(blockState, itemStack.getItem());
+        if (cost != ToolRules.DENY && (!table.isPlayerStrippedOnly() || !table.isRestorable(blockState)
+                || PlayerStrippedChunk.isPlayerStripped(world.getWorldChunk(blockPos), blockPos))) {
+            WorldRecoveryState state = scheduler.get(world);
+            if (!state.isToggling(table, blockPos) && table.isAllowedAt(world, blockPos)
+                    && state.protection.canRestore(TreeRecoveryApi.protectionChecks, player, blockPos, table.getProtectionCacheTicks())) {
+                BlockState updatedBlockState = table.getTransformedState(blockState);
+                state.write(table, blockPos, blockState, updatedBlockState, player.getUuid());
+                state.recordToggle(blockPos);
+                damageItem(player, itemStack, cost);
+                return ActionResult.SUCCESS;
+            }
+        }
+        return ActionResult.PASS;
+    }
+
+    private void damageItem(PlayerEntity player, ItemStack itemStack, int cost) {
+        if (cost == 0) {
+            return;
+        }
+        itemStack.damage(cost, player, (p) -> p.sendToolBreakStatus(player.getActiveHand()));
+        if (itemStack.getDamage() >= itemStack.getMaxDamage()) {
+            itemStack.decrement(1);
+        }
     }
 
-    private static class Config {
-        List<String> axes;
-        List<String> strippedLogs;
-        List<String> strippedWoods;
+    private record PendingPlan(ServerWorld world, RestorePlanner.Plan plan, long createdAt) {
     }
-}
\ No newline at end of file
+}
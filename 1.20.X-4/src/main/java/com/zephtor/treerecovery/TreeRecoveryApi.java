@@ -0,0 +1,86 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Entry point for other mods that want to restore stripped blocks.
+ * <p>
+ * Requests are queued and run on the server thread through the same per-tick budget as the rest of
+ * TreeRecovery, in chunk order. Position restores skip positions whose chunk is not loaded. Box
+ * restores edit unloaded chunks in their saved data when the {@code offlineEdits} config option is
+ * on, and skip them otherwise. What was skipped is counted in {@link RestoreResult#getSkipped()}.
+ * The returned future completes on the server thread.
+ * All methods may be called from any thread.
+ */
+public final class TreeRecoveryApi {
+
+    static RestoreScheduler scheduler;
+    static final List<ProtectionCheck> protectionChecks = new CopyOnWriteArrayList<>();
+
+    private TreeRecoveryApi() {
+    }
+
+    public static CompletableFuture<RestoreResult> restore(ServerWorld world, Collection<BlockPos> positions) {
+        long[] packed = new long[positions.size()];
+        int i = 0;
+        for (BlockPos pos : positions) {
+            packed[i++] = pos.asLong();
+        }
+        return submit(new PositionRestoreJob(world, packed));
+    }
+
+    public static CompletableFuture<RestoreResult> restore(ServerWorld world, BlockBox box) {
+        return submit(new BoxRestoreJob(world, box));
+    }
+
+    /**
+     * Adds a check that must allow a player's restoration before it happens.
+     */
+    public static void registerProtectionCheck(ProtectionCheck check) {
+        protectionChecks.add(check);
+    }
+
+    /**
+     * Drops every cached protection decision.
+     */
+    public static void invalidateProtection() {
+        RestoreScheduler current = scheduler;
+        if (current != null) {
+            current.forEachWorld(state -> state.protection.invalidateAll());
+        }
+    }
+
+    public static void invalidateProtection(UUID player) {
+        RestoreScheduler current = scheduler;
+        if (current != null) {
+            current.forEachWorld(state -> state.protection.invalidate(player));
+        }
+    }
+
+    public static void invalidateProtection(ServerWorld world, ChunkPos chunk) {
+        RestoreScheduler current = scheduler;
+        // A world without state has no cached decisions, and creating it here would load files on the caller's thread.
+        WorldRecoveryState state = current == null ? null : current.peek(world);
+        if (state != null) {
+            state.protection.invalidate(chunk);
+        }
+    }
+
+    private static CompletableFuture<RestoreResult> submit(RestoreJob job) {
+        RestoreScheduler current = scheduler;
+        if (current == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("TreeRecovery is not initialized"));
+        }
+        current.submit(job);
+        return job.future;
+    }
+}
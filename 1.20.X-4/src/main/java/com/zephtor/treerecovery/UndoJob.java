@@ -0,0 +1,79 @@
+package com.zephtor.treerecovery;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reverts journaled writes of one world. Entries are fed by the thread streaming the journal and
+ * consumed on the world thread; the bounded queue keeps the reader at most a few ticks ahead.
+ */
+class UndoJob extends RestoreJob {
+
+    private final BlockingQueue<Entry> entries = new ArrayBlockingQueue<>(4096);
+    private volatile boolean fed;
+
+    UndoJob(ServerWorld world, @Nullable UUID actor) {
+        super(world, actor);
+    }
+
+    boolean offer(long pos, int expectedState, int targetState) throws InterruptedException {
+        Entry entry = new Entry(pos, expectedState, targetState);
+        while (!future.isDone()) {
+            if (entries.offer(entry, 50, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void finishFeeding() {
+        fed = true;
+    }
+
+    @Override
+    String describe() {
+        return "undo";
+    }
+
+    @Override
+    int run(RecoveryTable table, BlockWriteBatch batch, int budget) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int spent = 0;
+        Entry entry;
+        while (spent < budget && (entry = entries.poll()) != null) {
+            spent++;
+            pos.set(entry.pos);
+            if (!world.isChunkLoaded(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()))) {
+                skipped++;
+                continue;
+            }
+            BlockState current = world.getBlockState(pos);
+            if (Block.getRawIdFromState(current) == entry.expectedState) {
+                write(batch, pos, current, Block.getStateFromRawId(entry.targetState));
+            }
+        }
+        return spent;
+    }
+
+    @Override
+    void write(BlockWriteBatch batch, BlockPos pos, BlockState oldState, BlockState newState) {
+        batch.add(pos, oldState, newState, actor, true, this);
+    }
+
+    @Override
+    boolean isDone() {
+        return fed && entries.isEmpty();
+    }
+
+    private record Entry(long pos, int expectedState, int targetState) {
+    }
+}
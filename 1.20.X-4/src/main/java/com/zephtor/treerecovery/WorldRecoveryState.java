@@ -0,0 +1,195 @@
+package com.zephtor.treerecovery;
+
+import com.zephtor.treerecovery.core.FrequencySketch;
+import com.zephtor.treerecovery.core.SerialExecutor;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.random.Random;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mutable TreeRecovery state of a single world. Apart from {@link #submit} it is only touched from
+ * the thread ticking that world, so worlds ticked in parallel never share it.
+ */
+class WorldRecoveryState {
+
+    final ServerWorld world;
+    private final Queue<RestoreJob> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedJobs = new AtomicInteger();
+    private final List<RestoreJob> active = new ArrayList<>();
+    private final BlockWriteBatch batch;
+    private final JobManager jobs;
+    /**
+     * Runs off-thread preparation for this world's jobs in order, on the shared worker pool.
+     */
+    final Executor executor = new SerialExecutor(Util.getMainWorkerExecutor());
+    final RegrowthScheduler regrowth;
+    final ProtectionCache protection;
+    final DispenserRestorer dispensers;
+    final OfflineChunkEditor offline;
+    private final FrequencySketch toggles = new FrequencySketch(4096);
+    private long togglesAgedAt;
+    private double allowance = 1.0;
+
+    WorldRecoveryState(ServerWorld world, BlockWriteBatch.Listener listener, JobManager jobs) {
+        this.world = world;
+        this.jobs = jobs;
+        this.batch = new BlockWriteBatch(world, listener);
+        this.protection = new ProtectionCache(world);
+        this.dispensers = new DispenserRestorer(world);
+        this.offline = new OfflineChunkEditor(world, listener, executor);
+        Identifier id = world.getRegistryKey().getValue();
+        this.regrowth = new RegrowthScheduler(world, world.getServer().getRunDirectory().toPath()
+                .resolve("TreeRecovery").resolve("regrowth").resolve(id.getNamespace()).resolve(id.getPath()));
+        this.active.add(regrowth.job());
+        jobs.register(regrowth.job());
+    }
+
+    /**
+     * Queues {@code job}, or fails it right away if {@code limit} jobs are already waiting or running.
+     */
+    void submit(RestoreJob job, int limit) {
+        if (queuedJobs.incrementAndGet() > limit) {
+            queuedJobs.decrementAndGet();
+            job.future.completeExceptionally(new RejectedExecutionException("Too many TreeRecovery jobs queued"));
+            return;
+        }
+        submitted.add(job);
+    }
+
+    void write(RecoveryTable table, BlockPos pos, BlockState oldState, BlockState newState, @Nullable UUID actor) {
+        batch.add(pos, oldState, newState, actor);
+        batch.flush(table.isRestoreEffectsEnabled());
+    }
+
+    /**
+     * Counts a strip or restore at {@code pos} towards the toggle limit.
+     */
+    void recordToggle(BlockPos pos) {
+        toggles.increment(pos.asLong());
+    }
+
+    /**
+     * Whether {@code pos} was stripped and restored so often lately that restoring it is refused.
+     */
+    boolean isToggling(RecoveryTable table, BlockPos pos) {
+        return table.getToggleThreshold() > 0 && toggles.estimate(pos.asLong()) >= table.getToggleThreshold();
+    }
+
+    DispenserRestorer.Result dispense(RecoveryTable table, BlockPos pos, BlockState state) {
+        return dispensers.offer(table, batch, pos, state);
+    }
+
+    /**
+     * Rolls random bark regrowth for one chunk, sampling positions per section the way vanilla
+     * random ticks do. The chance shrinks with the governor's allowance while the server is behind.
+     * Writes are flushed together with the rest of the world's writes this tick; the flush drops those
+     * whose block was replaced in the meantime.
+     */
+    void randomTick(RecoveryTable table, WorldChunk chunk, int randomTickSpeed) {
+        ChunkSection[] sections = chunk.getSectionArray();
+        int startX = chunk.getPos().getStartX();
+        int startZ = chunk.getPos().getStartZ();
+        Random random = world.random;
+        for (int index = 0; index < sections.length; index++) {
+            ChunkSection section = sections[index];
+            if (section.isEmpty()) {
+                continue;
+            }
+            int startY = ChunkSectionPos.getBlockCoord(chunk.sectionIndexToCoord(index));
+            for (int i = 0; i < randomTickSpeed; i++) {
+                BlockPos pos = world.getRandomPosInChunk(startX, startY, startZ, 15);
+                BlockState state = section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+                float chance = table.getRandomRegrowthChance(state);
+                if (chance > 0.0F && random.nextFloat() < chance * allowance && (!table.isPlayerStrippedOnly()
+                        || PlayerStrippedChunk.isPlayerStripped(chunk, pos))) {
+                    batch.add(pos, state, table.getRestoredState(state), null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the deferrable work of this tick: regrowth, queued dispenser requests and jobs. Jobs spend
+     * their share of the global budget, the rest is scaled by {@code allowance}.
+     */
+    void tick(RecoveryTable table, double allowance) {
+        this.allowance = allowance;
+        regrowth.tick();
+        dispensers.tick(table, batch, (int) Math.ceil(table.getDispenserBlocksPerChunkTick() * allowance));
+        if (world.getTime() - togglesAgedAt >= table.getToggleWindowTicks()) {
+            toggles.age();
+            togglesAgedAt = world.getTime();
+        }
+        RestoreJob job;
+        while ((job = submitted.poll()) != null) {
+            job.offline = table.isOfflineEditEnabled() ? offline : null;
+            active.add(job);
+        }
+        Iterator<RestoreJob> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            job = iterator.next();
+            if (job.future.isDone()) {
+                // Cancelled from a command or by its submitter.
+                iterator.remove();
+                queuedJobs.decrementAndGet();
+                job.release();
+                continue;
+            }
+            if (job.paused) {
+                continue;
+            }
+            int reserved = jobs.reserve(job);
+            if (reserved == 0) {
+                continue;
+            }
+            int spent;
+            try {
+                spent = job.run(table, batch, reserved);
+            } catch (RuntimeException e) {
+                jobs.settle(job, reserved, 0);
+                iterator.remove();
+                queuedJobs.decrementAndGet();
+                job.release();
+                job.future.completeExceptionally(e);
+                continue;
+            }
+            jobs.settle(job, reserved, spent);
+            if (job.isDone()) {
+                iterator.remove();
+                queuedJobs.decrementAndGet();
+                batch.flush(table.isRestoreEffectsEnabled());
+                job.complete();
+            }
+        }
+        batch.flush(table.isRestoreEffectsEnabled());
+    }
+
+    void cancelAll() {
+        regrowth.close();
+        submitted.forEach(job -> job.future.cancel(false));
+        submitted.clear();
+        active.forEach(job -> {
+            job.future.cancel(false);
+            job.release();
+        });
+        active.clear();
+        queuedJobs.set(0);
+    }
+}
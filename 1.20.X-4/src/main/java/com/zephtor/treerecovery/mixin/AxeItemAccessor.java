@@ -0,0 +1,17 @@
+package com.zephtor.treerecovery.mixin;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.AxeItem;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.Map;
+
+@Mixin(AxeItem.class)
+public interface AxeItemAccessor {
+
+    @Accessor("STRIPPED_BLOCKS")
+    static Map<Block, Block> treerecovery$getStrippedBlocks() {
+        throw new AssertionError();
+    }
+}
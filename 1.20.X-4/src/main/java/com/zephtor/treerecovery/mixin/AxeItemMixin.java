@@ -0,0 +1,32 @@
+package com.zephtor.treerecovery.mixin;
+
+import com.llamalad7.mixinextras.sugar.Local;
+import com.zephtor.treerecovery.TreeRecovery;
+import net.minecraft.block.BlockState;
+import net.minecraft.item.AxeItem;
+import net.minecraft.item.ItemUsageContext;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.ActionResult;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(AxeItem.class)
+public abstract class AxeItemMixin {
+
+    @Inject(method = "useOnBlock", at = @At(value = "INVOKE",
+            target = "Lnet/minecraft/item/AxeItem;getStrippedState(Lnet/minecraft/block/BlockState;)Ljava/util/Optional;"), cancellable = true)
+    private void treerecovery$onUse(ItemUsageContext context, CallbackInfoReturnable<ActionResult> cir, @Local BlockState blockState) {
+        if (TreeRecovery.onAxeUse(context, blockState)) {
+            cir.setReturnValue(ActionResult.SUCCESS);
+        }
+    }
+
+    @Inject(method = "useOnBlock", at = @At("RETURN"))
+    private void treerecovery$onStripped(ItemUsageContext context, CallbackInfoReturnable<ActionResult> cir) {
+        if (cir.getReturnValue().isAccepted() && context.getWorld() instanceof ServerWorld world) {
+            TreeRecovery.onStripped(world, context.getBlockPos(), context.getPlayer());
+        }
+    }
+}
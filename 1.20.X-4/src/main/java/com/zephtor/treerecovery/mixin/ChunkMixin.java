@@ -0,0 +1,44 @@
+package com.zephtor.treerecovery.mixin;
+
+import com.zephtor.treerecovery.PlayerStrippedChunk;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.minecraft.world.chunk.Chunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+@Mixin(Chunk.class)
+public abstract class ChunkMixin implements PlayerStrippedChunk {
+
+    @Unique
+    private IntOpenHashSet treerecovery$playerStripped;
+
+    @Override
+    public boolean treerecovery$isPlayerStripped(int packed) {
+        return treerecovery$playerStripped != null && treerecovery$playerStripped.contains(packed);
+    }
+
+    @Override
+    public void treerecovery$setPlayerStripped(int packed, boolean stripped) {
+        if (stripped) {
+            if (treerecovery$playerStripped == null) {
+                treerecovery$playerStripped = new IntOpenHashSet(4);
+            }
+            treerecovery$playerStripped.add(packed);
+        } else if (treerecovery$playerStripped != null) {
+            treerecovery$playerStripped.remove(packed);
+            if (treerecovery$playerStripped.isEmpty()) {
+                treerecovery$playerStripped = null;
+            }
+        }
+    }
+
+    @Override
+    public int[] treerecovery$getPlayerStripped() {
+        return treerecovery$playerStripped == null ? new int[0] : treerecovery$playerStripped.toIntArray();
+    }
+
+    @Override
+    public void treerecovery$loadPlayerStripped(int[] packed) {
+        treerecovery$playerStripped = packed.length == 0 ? null : new IntOpenHashSet(packed);
+    }
+}
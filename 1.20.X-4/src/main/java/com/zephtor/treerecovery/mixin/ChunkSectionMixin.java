@@ -0,0 +1,71 @@
+package com.zephtor.treerecovery.mixin;
+
+import com.zephtor.treerecovery.StrippedSection;
+import com.zephtor.treerecovery.TreeRecovery;
+import com.zephtor.treerecovery.core.SectionBits;
+import net.minecraft.block.BlockState;
+import net.minecraft.world.chunk.ChunkSection;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkSection.class)
+public abstract class ChunkSectionMixin implements StrippedSection {
+
+    @Unique
+    private int treerecovery$indexFingerprint;
+    @Unique
+    private long[] treerecovery$strippedBits;
+    @Unique
+    private int treerecovery$strippedCount;
+
+    @Inject(method = "setBlockState(IIILnet/minecraft/block/BlockState;Z)Lnet/minecraft/block/BlockState;", at = @At("RETURN"))
+    private void treerecovery$onSetBlockState(int x, int y, int z, BlockState state, boolean lock, CallbackInfoReturnable<BlockState> cir) {
+        if (treerecovery$indexFingerprint != 0) {
+            TreeRecovery.onSectionBlockChanged((ChunkSection) (Object) this, x, y, z, cir.getReturnValue(), state);
+        }
+    }
+
+    @Override
+    public int treerecovery$getIndexFingerprint() {
+        return treerecovery$indexFingerprint;
+    }
+
+    @Override
+    @Nullable
+    public long[] treerecovery$getStrippedBits() {
+        return treerecovery$strippedBits;
+    }
+
+    @Override
+    public int treerecovery$getStrippedCount() {
+        return treerecovery$strippedCount;
+    }
+
+    @Override
+    public void treerecovery$setStrippedIndex(int fingerprint, @Nullable long[] bits) {
+        int count = bits == null ? 0 : SectionBits.count(bits);
+        treerecovery$indexFingerprint = fingerprint;
+        treerecovery$strippedBits = count == 0 ? null : bits;
+        treerecovery$strippedCount = count;
+    }
+
+    @Override
+    public void treerecovery$setStripped(int index, boolean stripped) {
+        if (stripped) {
+            if (treerecovery$strippedBits == null) {
+                treerecovery$strippedBits = new long[SectionBits.WORDS];
+            }
+            SectionBits.set(treerecovery$strippedBits, index);
+            treerecovery$strippedCount++;
+        } else if (treerecovery$strippedBits != null) {
+            SectionBits.clear(treerecovery$strippedBits, index);
+            if (--treerecovery$strippedCount == 0) {
+                treerecovery$strippedBits = null;
+            }
+        }
+    }
+}
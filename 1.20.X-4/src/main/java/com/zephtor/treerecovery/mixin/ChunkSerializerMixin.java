@@ -0,0 +1,37 @@
+package com.zephtor.treerecovery.mixin;
+
+import com.zephtor.treerecovery.PlayerStrippedChunk;
+import com.zephtor.treerecovery.TreeRecovery;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.chunk.ReadOnlyChunk;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkSerializer.class)
+public abstract class ChunkSerializerMixin {
+
+    @Inject(method = "serialize", at = @At("RETURN"))
+    private static void treerecovery$writeChunkData(ServerWorld world, Chunk chunk, CallbackInfoReturnable<NbtCompound> cir) {
+        TreeRecovery.writeChunkData(chunk, cir.getReturnValue());
+    }
+
+    @Inject(method = "deserialize", at = @At("RETURN"))
+    private static void treerecovery$readChunkData(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos chunkPos, NbtCompound nbt, CallbackInfoReturnable<ProtoChunk> cir) {
+        ProtoChunk loaded = cir.getReturnValue();
+        Chunk chunk = loaded instanceof ReadOnlyChunk readOnly ? readOnly.getWrappedChunk() : loaded;
+        if (nbt.contains(PlayerStrippedChunk.NBT_KEY, NbtElement.INT_ARRAY_TYPE)) {
+            ((PlayerStrippedChunk) chunk).treerecovery$loadPlayerStripped(nbt.getIntArray(PlayerStrippedChunk.NBT_KEY));
+        }
+        TreeRecovery.readChunkData(chunk, nbt);
+        TreeRecovery.onChunkDeserialized(world, chunkPos);
+    }
+}
@@ -0,0 +1,22 @@
+package com.zephtor.treerecovery.mixin;
+
+import com.zephtor.treerecovery.TreeRecovery;
+import net.minecraft.block.DispenserBlock;
+import net.minecraft.block.dispenser.DispenserBehavior;
+import net.minecraft.item.ItemStack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(DispenserBlock.class)
+public abstract class DispenserBlockMixin {
+
+    @Inject(method = "getBehaviorForItem", at = @At("RETURN"), cancellable = true)
+    private void treerecovery$wrapBehavior(ItemStack stack, CallbackInfoReturnable<DispenserBehavior> cir) {
+        DispenserBehavior behavior = TreeRecovery.wrapDispenserBehavior(stack, cir.getReturnValue());
+        if (behavior != null) {
+            cir.setReturnValue(behavior);
+        }
+    }
+}
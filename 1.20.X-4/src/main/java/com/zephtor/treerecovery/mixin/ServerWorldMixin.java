@@ -0,0 +1,27 @@
+package com.zephtor.treerecovery.mixin;
+
+import com.zephtor.treerecovery.TreeRecovery;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.ProgressListener;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerWorld.class)
+public abstract class ServerWorldMixin {
+
+    @Inject(method = "tickChunk", at = @At("TAIL"))
+    private void treerecovery$onTickChunk(WorldChunk chunk, int randomTickSpeed, CallbackInfo ci) {
+        TreeRecovery.onRandomTickChunk((ServerWorld) (Object) this, chunk, randomTickSpeed);
+    }
+
+    @Inject(method = "save", at = @At("HEAD"))
+    private void treerecovery$onSave(@Nullable ProgressListener progressListener, boolean flush, boolean savingDisabled, CallbackInfo ci) {
+        if (!savingDisabled) {
+            TreeRecovery.onWorldSave((ServerWorld) (Object) this);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.zephtor.treerecovery.mixin;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.server.world.ChunkHolder;
+import net.minecraft.server.world.ThreadedAnvilChunkStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(ThreadedAnvilChunkStorage.class)
+public interface ThreadedAnvilChunkStorageAccessor {
+
+    @Invoker("getCurrentChunkHolder")
+    ChunkHolder treerecovery$getCurrentChunkHolder(long pos);
+
+    @Accessor("chunksToUnload")
+    Long2ObjectLinkedOpenHashMap<ChunkHolder> treerecovery$getChunksToUnload();
+}
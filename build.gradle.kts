@@ -12,7 +12,9 @@ allprojects {
     version = "1.0.0"
 }
 
-subprojects {
+// The core engine in :common is plain Java 17 without any Minecraft dependency. 1.14.X-1.17.X run on
+// Java 8 and 16 and keep their own code; 1.20.X-6 has no sources yet.
+configure(subprojects.filter { it.name != "common" }) {
     apply(plugin = "fabric-loom")
     apply(plugin = "kotlin")
 }
@@ -0,0 +1,95 @@
+package com.zephtor.treerecovery.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer, single-consumer queue of audit records. Record fields live in
+ * primitive arrays, so publishing a record allocates nothing. Each slot carries a sequence number
+ * that tells producers and the consumer whose turn it is. Producers never wait: a record published
+ * while the buffer is full is dropped and counted.
+ */
+public final class AuditRingBuffer {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head;
+
+    public final int[] worlds;
+    public final long[] positions;
+    public final int[] oldStates;
+    public final int[] newStates;
+    public final long[] actorMost;
+    public final long[] actorLeast;
+    public final long[] times;
+
+    public AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.worlds = new int[size];
+        this.positions = new long[size];
+        this.oldStates = new int[size];
+        this.newStates = new int[size];
+        this.actorMost = new long[size];
+        this.actorLeast = new long[size];
+        this.times = new long[size];
+    }
+
+    /**
+     * Publishes a record. Returns false and counts the record as dropped if the buffer is full.
+     */
+    public boolean publish(int world, long pos, int oldState, int newState, long most, long least, long time) {
+        long claimed;
+        while (true) {
+            claimed = tail.get();
+            long difference = sequences.get((int) claimed & mask) - claimed;
+            if (difference == 0) {
+                if (tail.compareAndSet(claimed, claimed + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        int slot = (int) claimed & mask;
+        worlds[slot] = world;
+        positions[slot] = pos;
+        oldStates[slot] = oldState;
+        newStates[slot] = newState;
+        actorMost[slot] = most;
+        actorLeast[slot] = least;
+        times[slot] = time;
+        sequences.set(slot, claimed + 1);
+        return true;
+    }
+
+    /**
+     * Returns the slot of the next published record, or -1 if there is none. Only the consumer
+     * thread may call this, followed by {@link #release} once the slot has been read.
+     */
+    public int peek() {
+        int slot = (int) head & mask;
+        return sequences.get(slot) == head + 1 ? slot : -1;
+    }
+
+    public void release(int slot) {
+        sequences.set(slot, head + mask + 1);
+        head++;
+    }
+
+    /**
+     * Returns how many records were dropped since the last call and resets the count.
+     */
+    public long takeDropped() {
+        return dropped.get() == 0L ? 0L : dropped.getAndSet(0L);
+    }
+}
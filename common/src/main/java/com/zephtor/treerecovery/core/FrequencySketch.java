@@ -0,0 +1,68 @@
+package com.zephtor.treerecovery.core;
+
+/**
+ * Count-min sketch of how often keys were seen recently. Memory is fixed at construction no matter
+ * how many distinct keys are counted; estimates can only be too high, never too low, and collisions
+ * are kept down by updating only the smallest of a key's counters. {@link #age} halves every
+ * counter so old activity fades out.
+ */
+public final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final int[] counters;
+    private final int mask;
+
+    /**
+     * Creates a sketch with {@code width} counters per row, rounded up to a power of two.
+     */
+    public FrequencySketch(int width) {
+        int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.counters = new int[DEPTH * size];
+        this.mask = size - 1;
+    }
+
+    public int estimate(long key) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[slot(row, key)]);
+        }
+        return min;
+    }
+
+    /**
+     * Counts one more occurrence of {@code key} and returns its new estimate.
+     */
+    public int increment(long key) {
+        int estimate = estimate(key);
+        if (estimate == Integer.MAX_VALUE) {
+            return estimate;
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            int slot = slot(row, key);
+            if (counters[slot] == estimate) {
+                counters[slot]++;
+            }
+        }
+        return estimate + 1;
+    }
+
+    public void age() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    /**
+     * Runs the whole key through the splitmix64 finalizer before masking, so keys that differ only in
+     * their high bits (packed block X coordinates) still spread over every row.
+     */
+    private int slot(int row, long key) {
+        long hash = key ^ SEEDS[row];
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        return row * (mask + 1) + (int) (hash & mask);
+    }
+}
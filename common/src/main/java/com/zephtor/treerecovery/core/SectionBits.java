@@ -0,0 +1,68 @@
+package com.zephtor.treerecovery.core;
+
+/**
+ * Helpers for 4096-bit maps over the blocks of a 16x16x16 chunk section, indexed like the section's
+ * block states as {@code y << 8 | z << 4 | x}.
+ */
+public final class SectionBits {
+
+    public static final int BLOCKS = 4096;
+    public static final int WORDS = BLOCKS / Long.SIZE;
+
+    private SectionBits() {
+    }
+
+    public static int index(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    public static int x(int index) {
+        return index & 15;
+    }
+
+    public static int y(int index) {
+        return index >> 8;
+    }
+
+    public static int z(int index) {
+        return index >> 4 & 15;
+    }
+
+    public static boolean get(long[] bits, int index) {
+        return (bits[index >> 6] & 1L << index) != 0L;
+    }
+
+    public static void set(long[] bits, int index) {
+        bits[index >> 6] |= 1L << index;
+    }
+
+    public static void clear(long[] bits, int index) {
+        bits[index >> 6] &= ~(1L << index);
+    }
+
+    public static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first set index at or after {@code from}, or -1 if there is none.
+     */
+    public static int next(long[] bits, int from) {
+        int word = from >> 6;
+        if (word >= WORDS) {
+            return -1;
+        }
+        long current = bits[word] & (-1L << (from & 63));
+        while (current == 0L) {
+            if (++word >= WORDS) {
+                return -1;
+            }
+            current = bits[word];
+        }
+        return word << 6 | Long.numberOfTrailingZeros(current);
+    }
+}
@@ -0,0 +1,79 @@
+package com.zephtor.treerecovery.core;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared delegate executor. Gives every world
+ * its own ordered lane on a common thread pool without a thread of its own.
+ */
+public final class SerialExecutor implements Executor {
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean running;
+
+    public SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        try {
+            delegate.execute(this::drain);
+        } catch (RuntimeException e) {
+            synchronized (tasks) {
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs queued tasks until the queue is empty. A task that throws ends this run, but the lane is
+     * handed on first, so the tasks queued behind it still run and later submissions are not stuck.
+     */
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+            boolean completed = false;
+            try {
+                task.run();
+                completed = true;
+            } finally {
+                if (!completed) {
+                    resume();
+                }
+            }
+        }
+    }
+
+    private void resume() {
+        synchronized (tasks) {
+            if (tasks.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+        schedule();
+    }
+}
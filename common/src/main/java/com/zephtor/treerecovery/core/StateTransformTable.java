@@ -0,0 +1,87 @@
+package com.zephtor.treerecovery.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Maps block state raw ids to the raw id of the state they transform back into. Each version
+ * adapter fills it from its own registries at load time; lookups afterwards are one array read.
+ */
+public final class StateTransformTable {
+
+    public static final int NONE = -1;
+
+    private final int[] targets;
+    private final int[] transforms;
+
+    private StateTransformTable(int[] targets, int[] transforms) {
+        this.targets = targets;
+        this.transforms = transforms;
+    }
+
+    /**
+     * Returns the raw id of the state {@code stateId} transforms into, or {@link #NONE}.
+     */
+    public int getTarget(int stateId) {
+        return stateId >= 0 && stateId < targets.length ? targets[stateId] : NONE;
+    }
+
+    /**
+     * Returns the index of the transform registered for {@code stateId}, or {@link #NONE}.
+     */
+    public int getTransform(int stateId) {
+        return stateId >= 0 && stateId < transforms.length ? transforms[stateId] : NONE;
+    }
+
+    public int size() {
+        return targets.length;
+    }
+
+    int serializedSize() {
+        return Integer.BYTES + targets.length * 2 * Integer.BYTES;
+    }
+
+    void write(ByteBuffer out) {
+        out.putInt(targets.length);
+        out.asIntBuffer().put(targets).put(transforms);
+        out.position(out.position() + targets.length * 2 * Integer.BYTES);
+    }
+
+    static StateTransformTable read(ByteBuffer in) {
+        int size = in.getInt();
+        if (size < 0 || size > in.remaining() / (2 * Integer.BYTES)) {
+            throw new IllegalArgumentException("Bad state count " + size);
+        }
+        int[] targets = new int[size];
+        int[] transforms = new int[size];
+        in.asIntBuffer().get(targets).get(transforms);
+        in.position(in.position() + size * 2 * Integer.BYTES);
+        return new StateTransformTable(targets, transforms);
+    }
+
+    public static Builder builder(int stateCount) {
+        return new Builder(stateCount);
+    }
+
+    public static final class Builder {
+        private final int[] targets;
+        private final int[] transforms;
+
+        private Builder(int stateCount) {
+            targets = new int[stateCount];
+            transforms = new int[stateCount];
+            Arrays.fill(targets, NONE);
+            Arrays.fill(transforms, NONE);
+        }
+
+        public Builder put(int sourceStateId, int targetStateId, int transform) {
+            targets[sourceStateId] = targetStateId;
+            transforms[sourceStateId] = transform;
+            return this;
+        }
+
+        public StateTransformTable build() {
+            return new StateTransformTable(targets.clone(), transforms.clone());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.zephtor.treerecovery.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of compiled lookup tables. Every file is named after the key it was compiled for,
+ * which the caller derives from everything the tables depend on, so a stale file is never read
+ * and switching back to an earlier setup still finds its tables. Files are memory-mapped and
+ * checked against their key, size and checksum before use; anything that does not match is
+ * treated as a miss.
+ */
+public final class TableCache {
+
+    private static final int MAGIC = 0x54525443;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int KEEP = 4;
+    private static final String PREFIX = "tables-";
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+
+    public TableCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the tables saved for {@code key}, or null if there are none or the file is damaged.
+     */
+    public Entry load(long key) throws IOException {
+        Path file = file(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || data.getLong(8) != key
+                    || data.getInt(16) != size - HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer payload = data.slice(HEADER_SIZE, (int) size - HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != data.getInt(20)) {
+                return null;
+            }
+            Entry entry = new Entry(StateTransformTable.read(payload), ToolDecisionTable.read(payload));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the tables for {@code key} and deletes all but the most recently used files.
+     */
+    public void save(long key, StateTransformTable transforms, ToolDecisionTable tools) throws IOException {
+        int payloadSize = transforms.serializedSize() + tools.serializedSize();
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        data.position(HEADER_SIZE);
+        transforms.write(data);
+        tools.write(data);
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate().position(HEADER_SIZE).limit(HEADER_SIZE + payloadSize));
+        data.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, key).putInt(16, payloadSize).putInt(20, (int) crc.getValue());
+        data.position(0);
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, PREFIX, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        prune();
+    }
+
+    private void prune() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted(Comparator.comparing(TableCache::lastModified).reversed()).collect(Collectors.toList());
+        }
+        for (Path file : files.subList(Math.min(KEEP, files.size()), files.size())) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Still mapped on some platforms; it is retried on the next save.
+            }
+        }
+    }
+
+    private Path file(long key) {
+        return directory.resolve(String.format("%s%016x%s", PREFIX, key, SUFFIX));
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0L);
+        }
+    }
+
+    /**
+     * Mixes {@code value} into a running cache key.
+     */
+    public static long hash(long hash, long value) {
+        long mixed = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return mixed ^ mixed >>> 31;
+    }
+
+    /**
+     * Mixes every character of {@code value} into a running cache key; null mixes in as a marker.
+     */
+    public static long hash(long hash, String value) {
+        if (value == null) {
+            return hash(hash, -1L);
+        }
+        long chars = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            chars = chars * 31 + value.charAt(i);
+        }
+        return hash(hash(hash, value.length()), chars);
+    }
+
+    public record Entry(StateTransformTable transforms, ToolDecisionTable tools) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.zephtor.treerecovery.core;
+
+/**
+ * Scales deferrable work by how far the server is behind. Tick durations are smoothed with an
+ * exponentially weighted moving average. While the average is over the target, the allowance
+ * shrinks in proportion to the overshoot. Once there is headroom again it grows back a little
+ * every tick, so work slows down and picks up gradually instead of switching on and off.
+ * <p>
+ * Ticks are reported from the server thread; the allowance may be read from any thread.
+ */
+public final class TickGovernor {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_ALLOWANCE = 1.0 / 64.0;
+    private static final double MAX_DECREASE = 0.5;
+    private static final double INCREASE = 0.02;
+
+    private long tickStart;
+    private double averageNanos;
+    private volatile double allowance = 1.0;
+
+    public void onTickStart(long nanos) {
+        tickStart = nanos;
+    }
+
+    /**
+     * Records the tick that started at the last {@link #onTickStart} and adjusts the allowance
+     * against {@code targetNanos}.
+     */
+    public void onTickEnd(long nanos, long targetNanos) {
+        if (tickStart == 0L) {
+            return;
+        }
+        long duration = nanos - tickStart;
+        averageNanos = averageNanos == 0.0 ? duration : averageNanos + SMOOTHING * (duration - averageNanos);
+        double current = allowance;
+        if (averageNanos > targetNanos) {
+            current *= Math.max(MAX_DECREASE, targetNanos / averageNanos);
+        } else {
+            current += INCREASE;
+        }
+        allowance = Math.max(MIN_ALLOWANCE, Math.min(1.0, current));
+    }
+
+    /**
+     * Fraction of the configured budgets deferrable work may use this tick, between 1/64 and 1.
+     */
+    public double getAllowance() {
+        return allowance;
+    }
+
+    public double getAverageMillis() {
+        return averageNanos / 1_000_000.0;
+    }
+
+    /**
+     * Scales {@code budget} by the allowance, rounding up so that a positive budget never drops to 0.
+     */
+    public int scale(int budget) {
+        return (int) Math.ceil(budget * allowance);
+    }
+}
@@ -0,0 +1,141 @@
+package com.zephtor.treerecovery.core;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of packed positions keyed by an absolute tick.
+ * <p>
+ * Four levels of 64 slots cover 2^24 ticks; later deadlines wait in the top level and are
+ * re-filed whenever it comes round. Advancing by one tick touches one slot per level whose
+ * period starts at that tick, so the cost per tick is constant apart from the entries that
+ * actually fall due. Entries live in parallel primitive arrays chained per slot, with a free list.
+ */
+public final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int NONE = -1;
+
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private long[] positions;
+    private long[] deadlines;
+    private int[] next;
+    private int free = NONE;
+    private int allocated;
+    private int size;
+    private long current;
+
+    public TimingWheel(long now) {
+        this.current = now;
+        Arrays.fill(heads, NONE);
+        positions = new long[1024];
+        deadlines = new long[1024];
+        next = new int[1024];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long currentTick() {
+        return current;
+    }
+
+    public void schedule(long pos, long deadline) {
+        int entry = allocate();
+        positions[entry] = pos;
+        deadlines[entry] = deadline;
+        size++;
+        file(entry);
+    }
+
+    /**
+     * Moves the wheel forward to {@code now}, passing every entry that fell due to {@code due}.
+     */
+    public void advance(long now, DueConsumer due) {
+        while (current < now) {
+            long tick = current + 1;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level * SLOTS + ((int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            current = tick;
+            int slot = (int) tick & SLOT_MASK;
+            int entry = heads[slot];
+            heads[slot] = NONE;
+            while (entry != NONE) {
+                int following = next[entry];
+                long pos = positions[entry];
+                long deadline = deadlines[entry];
+                release(entry);
+                due.accept(pos, deadline);
+                entry = following;
+            }
+        }
+    }
+
+    public void forEach(DueConsumer consumer) {
+        for (int head : heads) {
+            for (int entry = head; entry != NONE; entry = next[entry]) {
+                consumer.accept(positions[entry], deadlines[entry]);
+            }
+        }
+    }
+
+    private void cascade(int slotIndex) {
+        int entry = heads[slotIndex];
+        heads[slotIndex] = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            file(entry);
+            entry = following;
+        }
+    }
+
+    private void file(int entry) {
+        long base = current + 1;
+        long deadline = Math.max(deadlines[entry], base);
+        int slotIndex = -1;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            if ((deadline >>> shift) - (base >>> shift) < SLOTS) {
+                slotIndex = level * SLOTS + ((int) (deadline >>> shift) & SLOT_MASK);
+                break;
+            }
+        }
+        if (slotIndex < 0) {
+            int shift = SLOT_BITS * (LEVELS - 1);
+            slotIndex = (LEVELS - 1) * SLOTS + ((int) ((base >>> shift) + SLOT_MASK) & SLOT_MASK);
+        }
+        next[entry] = heads[slotIndex];
+        heads[slotIndex] = entry;
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int entry = free;
+            free = next[entry];
+            return entry;
+        }
+        if (allocated == positions.length) {
+            int capacity = positions.length * 2;
+            positions = Arrays.copyOf(positions, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return allocated++;
+    }
+
+    private void release(int entry) {
+        next[entry] = free;
+        free = entry;
+        size--;
+    }
+
+    public interface DueConsumer {
+        void accept(long pos, long deadline);
+    }
+}
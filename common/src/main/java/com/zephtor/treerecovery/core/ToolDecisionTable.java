@@ -0,0 +1,116 @@
+package com.zephtor.treerecovery.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Table of durability costs indexed by (block state raw id, item raw id). States map to rows and
+ * items to columns through arrays, so a decision is three array reads however the table was built.
+ */
+public final class ToolDecisionTable {
+
+    public static final int DENY = -1;
+
+    private final short[] rowByState;
+    private final short[] columnByItem;
+    private final short[] cells;
+    private final int columns;
+
+    private ToolDecisionTable(short[] rowByState, short[] columnByItem, short[] cells, int columns) {
+        this.rowByState = rowByState;
+        this.columnByItem = columnByItem;
+        this.cells = cells;
+        this.columns = columns;
+    }
+
+    /**
+     * Returns the durability item {@code itemId} loses on state {@code stateId}, or {@link #DENY}.
+     */
+    public int getCost(int stateId, int itemId) {
+        if (stateId < 0 || stateId >= rowByState.length || itemId < 0 || itemId >= columnByItem.length) {
+            return DENY;
+        }
+        int row = rowByState[stateId];
+        int column = columnByItem[itemId];
+        if (row == 0 || column == 0) {
+            return DENY;
+        }
+        return cells[(row - 1) * columns + column - 1];
+    }
+
+    /**
+     * Whether item {@code itemId} has a column, that is whether any state accepts it at all.
+     */
+    public boolean hasTool(int itemId) {
+        return itemId >= 0 && itemId < columnByItem.length && columnByItem[itemId] != 0;
+    }
+
+    int serializedSize() {
+        return 4 * Integer.BYTES + (rowByState.length + columnByItem.length + cells.length) * Short.BYTES;
+    }
+
+    void write(ByteBuffer out) {
+        out.putInt(rowByState.length).putInt(columnByItem.length).putInt(cells.length).putInt(columns);
+        out.asShortBuffer().put(rowByState).put(columnByItem).put(cells);
+        out.position(out.position() + (rowByState.length + columnByItem.length + cells.length) * Short.BYTES);
+    }
+
+    static ToolDecisionTable read(ByteBuffer in) {
+        int states = in.getInt();
+        int items = in.getInt();
+        int cellCount = in.getInt();
+        int columns = in.getInt();
+        if (states < 0 || items < 0 || cellCount < 0 || columns < 0 || (columns == 0 ? cellCount != 0 : cellCount % columns != 0)
+                || (long) states + items + cellCount > in.remaining() / Short.BYTES) {
+            throw new IllegalArgumentException("Bad tool table dimensions");
+        }
+        short[] rowByState = new short[states];
+        short[] columnByItem = new short[items];
+        short[] cells = new short[cellCount];
+        in.asShortBuffer().get(rowByState).get(columnByItem).get(cells);
+        in.position(in.position() + (states + items + cellCount) * Short.BYTES);
+        return new ToolDecisionTable(rowByState, columnByItem, cells, columns);
+    }
+
+    public static Builder builder(int stateCount, int itemCount, int rows, int columns) {
+        return new Builder(stateCount, itemCount, rows, columns);
+    }
+
+    public static final class Builder {
+        private final short[] rowByState;
+        private final short[] columnByItem;
+        private final short[] cells;
+        private final int columns;
+
+        private Builder(int stateCount, int itemCount, int rows, int columns) {
+            this.rowByState = new short[stateCount];
+            this.columnByItem = new short[itemCount];
+            this.cells = new short[rows * columns];
+            this.columns = columns;
+            Arrays.fill(cells, (short) DENY);
+        }
+
+        public Builder row(int stateId, int row) {
+            rowByState[stateId] = (short) (row + 1);
+            return this;
+        }
+
+        public Builder column(int itemId, int column) {
+            columnByItem[itemId] = (short) (column + 1);
+            return this;
+        }
+
+        public int get(int row, int column) {
+            return cells[row * columns + column];
+        }
+
+        public Builder set(int row, int column, int cost) {
+            cells[row * columns + column] = (short) (cost < 0 ? DENY : Math.min(Short.MAX_VALUE, cost));
+            return this;
+        }
+
+        public ToolDecisionTable build() {
+            return new ToolDecisionTable(rowByState.clone(), columnByItem.clone(), cells.clone(), columns);
+        }
+    }
+}
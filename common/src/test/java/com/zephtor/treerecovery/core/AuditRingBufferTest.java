@@ -0,0 +1,113 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditRingBufferTest {
+
+    private static boolean publish(AuditRingBuffer ring, long pos) {
+        return ring.publish(1, pos, 2, 3, 4L, 5L, pos * 10);
+    }
+
+    /**
+     * Consumes the next record and returns its position.
+     */
+    private static long consume(AuditRingBuffer ring) {
+        int slot = ring.peek();
+        assertTrue(slot >= 0, "no record to consume");
+        long pos = ring.positions[slot];
+        assertEquals(pos * 10, ring.times[slot]);
+        ring.release(slot);
+        return pos;
+    }
+
+    @Test
+    void emptyRingHasNothingToPeek() {
+        assertEquals(-1, new AuditRingBuffer(8).peek());
+    }
+
+    @Test
+    void deliversRecordsInOrderAcrossWraparound() {
+        AuditRingBuffer ring = new AuditRingBuffer(8);
+        long next = 0;
+        long expected = 0;
+        // Keep the ring partly filled while passing many times its capacity through it.
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(publish(ring, next++));
+            }
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected++, consume(ring));
+            }
+        }
+        assertEquals(-1, ring.peek());
+        assertEquals(0L, ring.takeDropped());
+    }
+
+    @Test
+    void dropsAndCountsWhenFull() {
+        AuditRingBuffer ring = new AuditRingBuffer(8);
+        int capacity = 0;
+        while (publish(ring, capacity)) {
+            capacity++;
+        }
+        assertTrue(capacity >= 8, "capacity " + capacity);
+        assertFalse(publish(ring, 1000));
+        assertEquals(2L, ring.takeDropped());
+        assertEquals(0L, ring.takeDropped());
+
+        assertEquals(0L, consume(ring));
+        assertTrue(publish(ring, 2000));
+        for (long pos = 1; pos < capacity; pos++) {
+            assertEquals(pos, consume(ring));
+        }
+        assertEquals(2000L, consume(ring));
+        assertEquals(-1, ring.peek());
+    }
+
+    @Test
+    void concurrentProducersLoseNothingThatWasAccepted() throws InterruptedException {
+        AuditRingBuffer ring = new AuditRingBuffer(1024);
+        int producers = 4;
+        int perProducer = 20_000;
+        Set<Long> accepted = Collections.synchronizedSet(new HashSet<>());
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long pos = (long) producer * perProducer + i;
+                    if (publish(ring, pos)) {
+                        accepted.add(pos);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        Set<Long> consumed = new HashSet<>();
+        boolean producing = true;
+        while (producing || ring.peek() >= 0) {
+            producing = false;
+            for (Thread thread : threads) {
+                producing |= thread.isAlive();
+            }
+            int slot;
+            while ((slot = ring.peek()) >= 0) {
+                consumed.add(ring.positions[slot]);
+                ring.release(slot);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(accepted, consumed);
+        assertEquals((long) producers * perProducer, consumed.size() + ring.takeDropped());
+    }
+}
@@ -0,0 +1,63 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    /**
+     * Same layout as Minecraft's {@code BlockPos.asLong}: X in the top 26 bits, then Z, then Y.
+     */
+    private static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | (long) y & 0xFFFL;
+    }
+
+    @Test
+    void countsRepeatedKey() {
+        FrequencySketch sketch = new FrequencySketch(4096);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(pack(100, 64, 200));
+        }
+        assertEquals(8, sketch.estimate(pack(100, 64, 200)));
+    }
+
+    @Test
+    void keysDifferingInHighBitsDoNotShareCounters() {
+        FrequencySketch sketch = new FrequencySketch(4096);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(pack(100, 64, 200));
+        }
+        for (int shift = 0; shift < 26; shift++) {
+            assertEquals(0, sketch.estimate(pack(100 + (1 << shift), 64, 200)), "x + 2^" + shift);
+            assertEquals(0, sketch.estimate(pack(100, 64, 200 + (1 << shift))), "z + 2^" + shift);
+        }
+    }
+
+    @Test
+    void spreadsStridedPositions() {
+        FrequencySketch sketch = new FrequencySketch(4096);
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment(pack(i * 32, 64, 0));
+        }
+        int falsePositives = 0;
+        for (int i = 1000; i < 2000; i++) {
+            if (sketch.estimate(pack(i * 32, 64, 0)) > 0) {
+                falsePositives++;
+            }
+        }
+        // With 1000 keys in 4096 counters a row collides about a quarter of the time; all four rows rarely do.
+        assertTrue(falsePositives < 20, falsePositives + " false positives");
+    }
+
+    @Test
+    void agingHalvesCounts() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(42L);
+        }
+        sketch.age();
+        assertEquals(4, sketch.estimate(42L));
+    }
+}
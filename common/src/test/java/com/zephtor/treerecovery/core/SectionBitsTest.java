@@ -0,0 +1,51 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SectionBitsTest {
+
+    @Test
+    void indexRoundTripsCoordinates() {
+        for (int index = 0; index < SectionBits.BLOCKS; index++) {
+            assertEquals(index, SectionBits.index(SectionBits.x(index), SectionBits.y(index), SectionBits.z(index)));
+        }
+        // World coordinates wrap into the section.
+        assertEquals(SectionBits.index(1, 2, 3), SectionBits.index(17, -14, 35));
+    }
+
+    @Test
+    void setGetAndClear() {
+        long[] bits = new long[SectionBits.WORDS];
+        SectionBits.set(bits, 0);
+        SectionBits.set(bits, 63);
+        SectionBits.set(bits, 64);
+        SectionBits.set(bits, 4095);
+        assertTrue(SectionBits.get(bits, 63));
+        assertTrue(SectionBits.get(bits, 64));
+        assertFalse(SectionBits.get(bits, 1));
+        assertEquals(4, SectionBits.count(bits));
+        SectionBits.clear(bits, 63);
+        assertFalse(SectionBits.get(bits, 63));
+        assertEquals(3, SectionBits.count(bits));
+    }
+
+    @Test
+    void nextWalksSetBitsInOrder() {
+        long[] bits = new long[SectionBits.WORDS];
+        int[] set = {5, 64, 1000, 4095};
+        for (int index : set) {
+            SectionBits.set(bits, index);
+        }
+        int found = 0;
+        for (int index = SectionBits.next(bits, 0); index >= 0; index = SectionBits.next(bits, index + 1)) {
+            assertEquals(set[found++], index);
+        }
+        assertEquals(set.length, found);
+        assertEquals(-1, SectionBits.next(bits, SectionBits.BLOCKS));
+        assertEquals(-1, SectionBits.next(new long[SectionBits.WORDS], 0));
+    }
+}
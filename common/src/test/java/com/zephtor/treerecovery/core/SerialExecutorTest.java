@@ -0,0 +1,68 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SerialExecutorTest {
+
+    /**
+     * Delegate that only runs tasks when asked to, so the test controls every step.
+     */
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> pending = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        void runAll() {
+            Runnable next;
+            while ((next = pending.poll()) != null) {
+                try {
+                    next.run();
+                } catch (RuntimeException ignored) {
+                    // The pool would log it and carry on.
+                }
+            }
+        }
+    }
+
+    @Test
+    void runsTasksInOrder() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        List<Integer> ran = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int index = i;
+            executor.execute(() -> ran.add(index));
+        }
+        assertEquals(1, delegate.pending.size());
+        delegate.runAll();
+        assertEquals(List.of(0, 1, 2, 3, 4), ran);
+    }
+
+    @Test
+    void keepsRunningAfterATaskThrows() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        List<String> ran = new ArrayList<>();
+        executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.execute(() -> ran.add("queued"));
+        delegate.runAll();
+        assertEquals(List.of("queued"), ran);
+
+        executor.execute(() -> ran.add("later"));
+        delegate.runAll();
+        assertEquals(List.of("queued", "later"), ran);
+    }
+}
@@ -0,0 +1,52 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StateTransformTableTest {
+
+    @Test
+    void looksUpTargetAndTransform() {
+        StateTransformTable table = StateTransformTable.builder(10).put(3, 7, 0).put(4, 8, 1).build();
+        assertEquals(7, table.getTarget(3));
+        assertEquals(0, table.getTransform(3));
+        assertEquals(8, table.getTarget(4));
+        assertEquals(1, table.getTransform(4));
+        assertEquals(StateTransformTable.NONE, table.getTarget(5));
+        assertEquals(StateTransformTable.NONE, table.getTransform(5));
+    }
+
+    @Test
+    void outOfRangeIdsHaveNoTarget() {
+        StateTransformTable table = StateTransformTable.builder(4).put(0, 1, 0).build();
+        assertEquals(StateTransformTable.NONE, table.getTarget(-1));
+        assertEquals(StateTransformTable.NONE, table.getTarget(4));
+        assertEquals(StateTransformTable.NONE, table.getTransform(100));
+    }
+
+    @Test
+    void builderChangesDoNotLeakIntoBuiltTables() {
+        StateTransformTable.Builder builder = StateTransformTable.builder(4).put(1, 2, 0);
+        StateTransformTable table = builder.build();
+        builder.put(1, 3, 0);
+        assertEquals(2, table.getTarget(1));
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        StateTransformTable table = StateTransformTable.builder(6).put(0, 5, 2).put(5, 0, 1).build();
+        ByteBuffer buffer = ByteBuffer.allocate(table.serializedSize());
+        table.write(buffer);
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        StateTransformTable read = StateTransformTable.read(buffer);
+        assertEquals(6, read.size());
+        for (int id = 0; id < 6; id++) {
+            assertEquals(table.getTarget(id), read.getTarget(id));
+            assertEquals(table.getTransform(id), read.getTransform(id));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TableCacheTest {
+
+    private static final long KEY = 0x1234_5678_9ABC_DEF0L;
+
+    private static StateTransformTable transforms() {
+        return StateTransformTable.builder(16).put(3, 9, 0).put(4, 10, 1).build();
+    }
+
+    private static ToolDecisionTable tools() {
+        return ToolDecisionTable.builder(16, 8, 1, 1).row(3, 0).column(2, 0).set(0, 0, 2).build();
+    }
+
+    private static Path onlyFile(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".bin")).findFirst().orElseThrow();
+        }
+    }
+
+    private static Path fileFor(Path directory, long key) {
+        return directory.resolve(String.format("tables-%016x.bin", key));
+    }
+
+    private static void patch(Path file, long offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), offset);
+        }
+    }
+
+    @Test
+    void roundTripsTables(@TempDir Path directory) throws IOException {
+        TableCache cache = new TableCache(directory);
+        cache.save(KEY, transforms(), tools());
+        TableCache.Entry entry = cache.load(KEY);
+        assertNotNull(entry);
+        assertEquals(9, entry.transforms().getTarget(3));
+        assertEquals(1, entry.transforms().getTransform(4));
+        assertEquals(16, entry.transforms().size());
+        assertEquals(2, entry.tools().getCost(3, 2));
+        assertEquals(ToolDecisionTable.DENY, entry.tools().getCost(4, 2));
+    }
+
+    @Test
+    void missesOtherKeys(@TempDir Path directory) throws IOException {
+        TableCache cache = new TableCache(directory);
+        assertNull(cache.load(KEY));
+        cache.save(KEY, transforms(), tools());
+        assertNull(cache.load(KEY + 1));
+    }
+
+    @Test
+    void rejectsCorruptPayload(@TempDir Path directory) throws IOException {
+        TableCache cache = new TableCache(directory);
+        cache.save(KEY, transforms(), tools());
+        // First target of the transform table, past the 24-byte header and its state count.
+        patch(onlyFile(directory), 28, 12345);
+        assertNull(cache.load(KEY));
+    }
+
+    @Test
+    void rejectsBadHeader(@TempDir Path directory) throws IOException {
+        TableCache cache = new TableCache(directory);
+        cache.save(KEY, transforms(), tools());
+        patch(onlyFile(directory), 4, 99);
+        assertNull(cache.load(KEY));
+    }
+
+    @Test
+    void rejectsTruncatedFile(@TempDir Path directory) throws IOException {
+        TableCache cache = new TableCache(directory);
+        cache.save(KEY, transforms(), tools());
+        Path file = onlyFile(directory);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 8);
+        }
+        assertNull(cache.load(KEY));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(10);
+        }
+        assertNull(cache.load(KEY));
+    }
+
+    @Test
+    void keepsOnlyRecentFiles(@TempDir Path directory) throws IOException {
+        TableCache cache = new TableCache(directory);
+        for (long key = 0; key < 6; key++) {
+            cache.save(key, transforms(), tools());
+            // Spell out the save order, file times may be coarser than the loop.
+            Files.setLastModifiedTime(fileFor(directory, key), FileTime.fromMillis(1000L * (key + 1)));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(4L, files.count());
+        }
+        assertNotNull(cache.load(5));
+    }
+
+    @Test
+    void hashDependsOnOrder() {
+        long ab = TableCache.hash(TableCache.hash(0L, "a"), "b");
+        long ba = TableCache.hash(TableCache.hash(0L, "b"), "a");
+        assertNotEquals(ab, ba);
+        assertNotEquals(TableCache.hash(0L, (String) null), TableCache.hash(0L, ""));
+    }
+}
@@ -0,0 +1,107 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    /**
+     * Advances {@code wheel} one tick at a time up to {@code until} and records the tick every entry fell due at.
+     */
+    private static List<long[]> advance(TimingWheel wheel, long until) {
+        List<long[]> fired = new ArrayList<>();
+        while (wheel.currentTick() < until) {
+            long tick = wheel.currentTick() + 1;
+            wheel.advance(tick, (pos, deadline) -> fired.add(new long[]{pos, deadline, tick}));
+        }
+        return fired;
+    }
+
+    @Test
+    void firesAtDeadline() {
+        TimingWheel wheel = new TimingWheel(100);
+        wheel.schedule(1L, 105);
+        wheel.schedule(2L, 101);
+        List<long[]> fired = advance(wheel, 110);
+        assertEquals(2, fired.size());
+        assertEquals(2L, fired.get(0)[0]);
+        assertEquals(101L, fired.get(0)[2]);
+        assertEquals(1L, fired.get(1)[0]);
+        assertEquals(105L, fired.get(1)[2]);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() {
+        TimingWheel wheel = new TimingWheel(1000);
+        wheel.schedule(7L, 10);
+        List<long[]> fired = advance(wheel, 1001);
+        assertEquals(1, fired.size());
+        assertEquals(10L, fired.get(0)[1]);
+        assertEquals(1001L, fired.get(0)[2]);
+    }
+
+    @Test
+    void cascadesAcrossLevels() {
+        TimingWheel wheel = new TimingWheel(0);
+        // One deadline per level: 2^6, 2^12 and 2^18 ticks are the level boundaries.
+        long[] deadlines = {63, 64, 4095, 4097, 262_143, 262_145, 300_000};
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.schedule(i, deadlines[i]);
+        }
+        List<long[]> fired = advance(wheel, 300_000);
+        assertEquals(deadlines.length, fired.size());
+        for (long[] entry : fired) {
+            assertEquals(entry[1], entry[2], "entry " + entry[0]);
+        }
+    }
+
+    @Test
+    void keepsDeadlinesBeyondTheWheelSpan() {
+        TimingWheel wheel = new TimingWheel(0);
+        long deadline = (1L << 24) + 1000;
+        wheel.schedule(42L, deadline);
+        // Advancing in one call walks every tick, like a server catching up after a stall.
+        List<long[]> fired = new ArrayList<>();
+        wheel.advance(deadline - 1, (pos, due) -> fired.add(new long[]{pos, due}));
+        assertTrue(fired.isEmpty(), "fired early");
+        assertEquals(1, wheel.size());
+        wheel.advance(deadline, (pos, due) -> fired.add(new long[]{pos, due}));
+        assertEquals(1, fired.size());
+        assertEquals(42L, fired.get(0)[0]);
+    }
+
+    @Test
+    void forEachListsPendingEntries() {
+        TimingWheel wheel = new TimingWheel(0);
+        wheel.schedule(1L, 10);
+        wheel.schedule(2L, 5000);
+        wheel.schedule(3L, 3);
+        advance(wheel, 5);
+        List<Long> pending = new ArrayList<>();
+        wheel.forEach((pos, deadline) -> pending.add(pos));
+        pending.sort(null);
+        assertEquals(List.of(1L, 2L), pending);
+        assertEquals(2, wheel.size());
+    }
+
+    @Test
+    void growsAndReusesEntries() {
+        TimingWheel wheel = new TimingWheel(0);
+        for (int i = 0; i < 5000; i++) {
+            wheel.schedule(i, 1 + i % 100);
+        }
+        assertEquals(5000, wheel.size());
+        assertEquals(5000, advance(wheel, 100).size());
+        for (int i = 0; i < 5000; i++) {
+            wheel.schedule(i, 200);
+        }
+        assertEquals(5000, advance(wheel, 200).size());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,68 @@
+package com.zephtor.treerecovery.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToolDecisionTableTest {
+
+    /**
+     * States 2 and 3 share row 0, state 5 is row 1; items 1 and 4 are columns 0 and 1.
+     */
+    private static ToolDecisionTable sample() {
+        return ToolDecisionTable.builder(8, 6, 2, 2)
+                .row(2, 0).row(3, 0).row(5, 1)
+                .column(1, 0).column(4, 1)
+                .set(0, 0, 1).set(0, 1, 0).set(1, 1, 3)
+                .build();
+    }
+
+    @Test
+    void looksUpCostByStateAndItem() {
+        ToolDecisionTable table = sample();
+        assertEquals(1, table.getCost(2, 1));
+        assertEquals(1, table.getCost(3, 1));
+        assertEquals(0, table.getCost(2, 4));
+        assertEquals(3, table.getCost(5, 4));
+        assertEquals(ToolDecisionTable.DENY, table.getCost(5, 1));
+    }
+
+    @Test
+    void deniesUnknownStatesAndItems() {
+        ToolDecisionTable table = sample();
+        assertEquals(ToolDecisionTable.DENY, table.getCost(0, 1));
+        assertEquals(ToolDecisionTable.DENY, table.getCost(2, 0));
+        assertEquals(ToolDecisionTable.DENY, table.getCost(-1, 1));
+        assertEquals(ToolDecisionTable.DENY, table.getCost(2, 99));
+        assertTrue(table.hasTool(4));
+        assertFalse(table.hasTool(2));
+        assertFalse(table.hasTool(-1));
+    }
+
+    @Test
+    void clampsCosts() {
+        ToolDecisionTable table = ToolDecisionTable.builder(1, 1, 1, 1).row(0, 0).column(0, 0).set(0, 0, 1_000_000).build();
+        assertEquals(Short.MAX_VALUE, table.getCost(0, 0));
+        table = ToolDecisionTable.builder(1, 1, 1, 1).row(0, 0).column(0, 0).set(0, 0, -5).build();
+        assertEquals(ToolDecisionTable.DENY, table.getCost(0, 0));
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        ToolDecisionTable table = sample();
+        ByteBuffer buffer = ByteBuffer.allocate(table.serializedSize());
+        table.write(buffer);
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        ToolDecisionTable read = ToolDecisionTable.read(buffer);
+        for (int state = 0; state < 8; state++) {
+            for (int item = 0; item < 6; item++) {
+                assertEquals(table.getCost(state, item), read.getCost(state, item));
+            }
+        }
+    }
+}
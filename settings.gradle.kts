@@ -13,6 +13,8 @@ pluginManagement {
     }
 }
 
+include("common")
+
 include("1.14.X")
 findProject(":1.14.X")?.name = "1.14.X"
 